@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Throughput of one shared scheduler under contention. Every JMH thread plays
+// a stream of short processes (start, two yields, terminate) like the
+// Tests.ProcessSimThread2 workload; override the thread count with -t.
+// Each operation releases its processor before returning, so measurement can
+// stop at any point without leaving a thread parked behind a finished one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class DispatchBenchmark {
+    @Param({"OS", "ConcurrentOS", "LocalQueueOS", "ShardedOS"})
+    String implementation;
+
+    @Param({"1", "4", "16", "64", "256"})
+    int processors;
+
+    @Param({"SINGLE", "UNIFORM", "SKEWED"})
+    PriorityMix priorityMix;
+
+    Scheduler os;
+
+    @Setup
+    public void setUp() {
+        os = new Scheduler(implementation, processors);
+    }
+
+    @Benchmark
+    public int contendedDispatch() {
+        int pid = os.reg(priorityMix.next());
+        os.start(pid);
+        os.schedule(pid);
+        os.schedule(pid);
+        os.terminate(pid);
+        return pid;
+    }
+}
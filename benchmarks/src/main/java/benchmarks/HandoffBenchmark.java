@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Round-trip latency of a yield on a single processor: the benchmark thread
+// hands the processor to a partner process that immediately yields it back.
+// Sampled, so the report includes p99 and p99.9 per wait strategy.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandoffBenchmark {
+    @Param({"BLOCKING", "SPINNING", "ADAPTIVE"})
+    String waitStrategy;
+
+    Scheduler os;
+    int pid;
+    volatile boolean stopped;
+    Thread partner;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        os = new Scheduler("OS", 1);
+        os.configure("setWaitStrategy", "WaitStrategy", waitStrategy);
+        stopped = false;
+        int partnerPid = os.reg(5);
+        partner = new Thread(() -> {
+            os.start(partnerPid);
+            while (!stopped) {
+                os.schedule(partnerPid);
+            }
+            os.terminate(partnerPid);
+        }, "handoff-partner");
+        partner.setDaemon(true);
+        partner.start();
+        pid = os.reg(5);
+        os.start(pid);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        stopped = true;
+        os.terminate(pid);
+        partner.join();
+    }
+
+    @Benchmark
+    public int yieldRoundTrip() {
+        os.schedule(pid);
+        return pid;
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Single-threaded latency of the individual calls. Each thread gets its own
+// scheduler so these never contend; see DispatchBenchmark for that.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LifecycleBenchmark {
+    @Param({"OS", "ConcurrentOS", "LocalQueueOS"})
+    String implementation;
+
+    // At least two: runningPid holds one and startTerminate needs another
+    @Param({"2", "64", "256"})
+    int processors;
+
+    Scheduler os;
+    int runningPid;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        os = new Scheduler(implementation, processors);
+        runningPid = os.reg(5);
+        os.start(runningPid);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        os.terminate(runningPid);
+    }
+
+    // Registration paired with terminate, as PIDs are recycled and a bare
+    // reg() loop would only measure table growth
+    @Benchmark
+    public int regTerminate() {
+        int pid = os.reg(5);
+        os.terminate(pid);
+        return pid;
+    }
+
+    // Full round-trip of a process that finds a free processor
+    @Benchmark
+    public int startTerminate() {
+        int pid = os.reg(5);
+        os.start(pid);
+        os.terminate(pid);
+        return pid;
+    }
+
+    // Yield with nobody else waiting
+    @Benchmark
+    public int scheduleYield() {
+        os.schedule(runningPid);
+        return runningPid;
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Compares the SchedulingPolicy implementations on OS with ten priority levels
+// and two processors. throughput is DispatchBenchmark's workload under each
+// policy. fairness runs urgent (priority 2) and background (priority 7)
+// processes side by side; the ratio of the two per-method scores is the share
+// each class got, from all-urgent under strict priority to weighted shares
+// under CFS and lottery. Each process burns a little CPU between yields so the
+// time-based policies have runtime to account.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyBenchmark {
+    private static final int LEVELS = 10;
+    private static final long WORK_TOKENS = 200;
+
+    @Param({"PriorityPolicy", "AgingPolicy", "MlfqPolicy", "CfsPolicy", "LotteryPolicy", "EdfPolicy"})
+    String policy;
+
+    @Param({"UNIFORM", "SKEWED"})
+    PriorityMix priorityMix;
+
+    Scheduler os;
+
+    @Setup
+    public void setUp() {
+        os = new Scheduler("OS", 2);
+        os.usePolicy(policy, LEVELS);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int throughput() {
+        return process(priorityMix.next());
+    }
+
+    @Benchmark
+    @Group("fairness")
+    @GroupThreads(4)
+    public int urgent() {
+        return process(2);
+    }
+
+    @Benchmark
+    @Group("fairness")
+    @GroupThreads(4)
+    public int background() {
+        return process(7);
+    }
+
+    private int process(int priority) {
+        int pid = os.reg(priority);
+        os.start(pid);
+        Blackhole.consumeCPU(WORK_TOKENS);
+        os.schedule(pid);
+        Blackhole.consumeCPU(WORK_TOKENS);
+        os.schedule(pid);
+        os.terminate(pid);
+        return pid;
+    }
+}
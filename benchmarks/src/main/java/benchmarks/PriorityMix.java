@@ -0,0 +1,31 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Priority distributions for registrations; all stay within 0-9 so every
+// implementation accepts them. Lower values are more urgent.
+public enum PriorityMix {
+    // Every process at the same level: pure FIFO
+    SINGLE {
+        @Override
+        int next() {
+            return 5;
+        }
+    },
+    // Spread evenly over ten levels
+    UNIFORM {
+        @Override
+        int next() {
+            return ThreadLocalRandom.current().nextInt(10);
+        }
+    },
+    // Mostly background work with one urgent process in ten
+    SKEWED {
+        @Override
+        int next() {
+            return ThreadLocalRandom.current().nextInt(10) == 0 ? 0 : 9;
+        }
+    };
+
+    abstract int next();
+}
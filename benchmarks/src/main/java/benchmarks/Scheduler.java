@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Drives any OS_sim_interface implementation by class name. The simulator lives
+// in the unnamed package, which a named package cannot import (and JMH refuses
+// benchmarks in the unnamed package), so calls go through constant method
+// handles on the interface that the JIT inlines like a direct interface call.
+final class Scheduler {
+    private static final MethodHandle SET_PROCESSORS;
+    private static final MethodHandle REG;
+    private static final MethodHandle START;
+    private static final MethodHandle SCHEDULE;
+    private static final MethodHandle TERMINATE;
+
+    static {
+        try {
+            Class<?> api = Class.forName("OS_sim_interface");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType intToVoid = MethodType.methodType(void.class, int.class);
+            MethodType erasedIntToVoid = MethodType.methodType(void.class, Object.class, int.class);
+            SET_PROCESSORS = lookup.findVirtual(api, "set_number_of_processors", intToVoid).asType(erasedIntToVoid);
+            REG = lookup.findVirtual(api, "reg", MethodType.methodType(int.class, int.class))
+                    .asType(MethodType.methodType(int.class, Object.class, int.class));
+            START = lookup.findVirtual(api, "start", intToVoid).asType(erasedIntToVoid);
+            SCHEDULE = lookup.findVirtual(api, "schedule", intToVoid).asType(erasedIntToVoid);
+            TERMINATE = lookup.findVirtual(api, "terminate", intToVoid).asType(erasedIntToVoid);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object os;
+
+    Scheduler(String implementation, int processors) {
+        try {
+            os = Class.forName(implementation).getConstructor().newInstance();
+            SET_PROCESSORS.invokeExact(os, processors);
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Cannot instantiate " + implementation, e);
+        }
+    }
+
+    // Calls an implementation-specific setter taking one enum, e.g.
+    // configure("setWaitStrategy", "WaitStrategy", "ADAPTIVE")
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void configure(String setter, String enumClass, String constant) {
+        try {
+            Class<? extends Enum> type = (Class<? extends Enum>) Class.forName(enumClass);
+            os.getClass().getMethod(setter, type).invoke(os, Enum.valueOf(type, constant));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot call " + setter + "(" + constant + ") on " + os.getClass(), e);
+        }
+    }
+
+    // Installs a SchedulingPolicy by class name, built with the given number of
+    // priority levels, e.g. usePolicy("CfsPolicy", 10)
+    void usePolicy(String policyClass, int levels) {
+        try {
+            Class<?> api = Class.forName("SchedulingPolicy");
+            Object policy = Class.forName(policyClass).getConstructor(int.class).newInstance(levels);
+            os.getClass().getMethod("setSchedulingPolicy", api).invoke(os, policy);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot install " + policyClass + " on " + os.getClass(), e);
+        }
+    }
+
+    int reg(int priority) {
+        try {
+            return (int) REG.invokeExact(os, priority);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    void start(int pid) {
+        try {
+            START.invokeExact(os, pid);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    void schedule(int pid) {
+        try {
+            SCHEDULE.invokeExact(os, pid);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    void terminate(int pid) {
+        try {
+            TERMINATE.invokeExact(os, pid);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,12 @@
+// Told when OS admission control turns a process away. Called with the
+// scheduler lock held, so implementations must not block.
+@FunctionalInterface
+public interface AdmissionListener {
+    AdmissionListener NONE = (pid, priority, shed) -> { };
+
+    // shed is false when the process was refused on arrival and true when it
+    // was already queued and was dropped to make room for a more urgent one.
+    // Either way it is left registered but not started: it may try again or
+    // terminate.
+    void rejected(int pid, int priority, boolean shed);
+}
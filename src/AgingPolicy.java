@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+// Strict priority with aging. Time is divided into epochs and a process that
+// becomes ready in epoch e at priority p waits under key e + p; the smallest key
+// runs next, FIFO within a key. A waiting process therefore gains one level of
+// urgency per epoch relative to later arrivals, and once p epochs have passed
+// nothing that arrives afterwards can overtake it, whatever its priority.
+//
+// Keys live in a ring of `levels` buckets, each an intrusive doubly linked list
+// of slots. When an epoch ends the bucket of the oldest key is spliced onto the
+// front of the next one, so aging costs O(1) per epoch and is never a rescan of
+// the waiting processes; enqueue, poll and remove are O(levels / 64).
+public class AgingPolicy implements SchedulingPolicy {
+    public static final long DEFAULT_EPOCH_NANOS = 10_000_000;
+
+    private final int levels;
+    private final long epochNanos;
+    private final int[] heads;
+    private final int[] tails;
+    private final long[] nonEmpty;
+    private final long[] maxWaits;
+    // Smallest live key; buckets hold keys base .. base + levels - 1
+    private long base;
+    private boolean started;
+    private int size;
+
+    // Per slot. A key below base has been spliced into base's bucket.
+    private int[] pids = new int[16];
+    private int[] priorities = new int[16];
+    private boolean[] queued = new boolean[16];
+    private long[] keys = new long[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private long[] enqueuedAt = new long[16];
+
+    public AgingPolicy(int priorityLevels) {
+        this(priorityLevels, DEFAULT_EPOCH_NANOS);
+    }
+
+    public AgingPolicy(int priorityLevels, long epochNanos) {
+        if (priorityLevels <= 0 || epochNanos <= 0) {
+            throw new IllegalArgumentException("Invalid aging configuration");
+        }
+        this.levels = priorityLevels;
+        this.epochNanos = epochNanos;
+        heads = new int[priorityLevels];
+        tails = new int[priorityLevels];
+        Arrays.fill(heads, -1);
+        Arrays.fill(tails, -1);
+        nonEmpty = new long[(priorityLevels + 63) >>> 6];
+        maxWaits = new long[priorityLevels];
+    }
+
+    // Longest a process of this priority can wait before no later arrival can
+    // overtake it: its priority in epochs, plus the epoch it arrived in. Its
+    // total wait is this plus the time to serve whatever was already ahead.
+    public long agingBoundNanos(int priority) {
+        return (priority + 1L) * epochNanos;
+    }
+
+    // Longest wait seen so far for a process of this priority
+    public long maxObservedWaitNanos(int priority) {
+        return maxWaits[priority];
+    }
+
+    @Override
+    public int levels() {
+        return levels;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void enqueue(int pid, int slot, int priority, long now) {
+        if (priority < 0 || priority >= levels) {
+            throw new IllegalArgumentException("Priority " + priority + " outside 0.." + (levels - 1));
+        }
+        advance(now);
+        ensureCapacity(slot);
+        pids[slot] = pid;
+        priorities[slot] = priority;
+        queued[slot] = true;
+        keys[slot] = base + priority;
+        enqueuedAt[slot] = now;
+        int bucket = bucket(keys[slot]);
+        next[slot] = -1;
+        prev[slot] = tails[bucket];
+        if (tails[bucket] == -1) {
+            heads[bucket] = slot;
+            nonEmpty[bucket >>> 6] |= 1L << bucket;
+        } else {
+            next[tails[bucket]] = slot;
+        }
+        tails[bucket] = slot;
+        size++;
+    }
+
+    @Override
+    public int poll(long now) {
+        advance(now);
+        if (size == 0) {
+            return -1;
+        }
+        int bucket = firstBucket();
+        int slot = heads[bucket];
+        unlink(slot, bucket);
+        int priority = priorities[slot];
+        maxWaits[priority] = Math.max(maxWaits[priority], now - enqueuedAt[slot]);
+        return pids[slot];
+    }
+
+    @Override
+    public boolean remove(int pid, int slot, int priority) {
+        if (slot >= pids.length || pids[slot] != pid || !queued[slot]) {
+            return false;
+        }
+        unlink(slot, bucket(Math.max(keys[slot], base)));
+        return true;
+    }
+
+    // A yielding process would wait under base + priority, so it gives way to
+    // anything already waiting under that key or a smaller one
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        advance(now);
+        return size > 0 && keyOf(firstBucket()) <= base + priority;
+    }
+
+    private void unlink(int slot, int bucket) {
+        if (prev[slot] == -1) {
+            heads[bucket] = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] == -1) {
+            tails[bucket] = prev[slot];
+        } else {
+            prev[next[slot]] = prev[slot];
+        }
+        if (heads[bucket] == -1) {
+            nonEmpty[bucket >>> 6] &= ~(1L << bucket);
+        }
+        queued[slot] = false;
+        size--;
+    }
+
+    // Moves base up to the current epoch. Each epoch splices the oldest bucket
+    // onto the front of the next; after `levels` epochs everything is in one
+    // bucket already, so longer gaps jump straight to the target.
+    private void advance(long now) {
+        long epoch = Math.floorDiv(now, epochNanos);
+        if (!started) {
+            started = true;
+            base = epoch;
+            return;
+        }
+        long steps = epoch - base;
+        for (long i = 0; i < steps && i < levels; i++) {
+            int from = bucket(base);
+            base++;
+            if (heads[from] != -1 && from != bucket(base)) {
+                splice(from, bucket(base));
+            }
+        }
+        if (steps > levels) {
+            int from = bucket(base);
+            base = epoch;
+            if (heads[from] != -1 && from != bucket(base)) {
+                splice(from, bucket(base));
+            }
+        }
+    }
+
+    // Puts the whole of bucket `from` in front of bucket `to`
+    private void splice(int from, int to) {
+        if (heads[to] == -1) {
+            tails[to] = tails[from];
+            nonEmpty[to >>> 6] |= 1L << to;
+        } else {
+            next[tails[from]] = heads[to];
+            prev[heads[to]] = tails[from];
+        }
+        heads[to] = heads[from];
+        heads[from] = -1;
+        tails[from] = -1;
+        nonEmpty[from >>> 6] &= ~(1L << from);
+    }
+
+    // Non-empty bucket holding the smallest key, searching the ring from base
+    private int firstBucket() {
+        int start = bucket(base);
+        int found = nextSetBit(start, levels);
+        return found != -1 ? found : nextSetBit(0, start);
+    }
+
+    private int nextSetBit(int from, int to) {
+        for (int w = from >>> 6; w < nonEmpty.length && (w << 6) < to; w++) {
+            long word = nonEmpty[w];
+            if (w == from >>> 6) {
+                word &= -1L << from;
+            }
+            if (word != 0) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                return bit < to ? bit : -1;
+            }
+        }
+        return -1;
+    }
+
+    private long keyOf(int bucket) {
+        return base + Math.floorMod(bucket - bucket(base), levels);
+    }
+
+    private int bucket(long key) {
+        return (int) Math.floorMod(key, (long) levels);
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot >= pids.length) {
+            int length = Math.max(slot + 1, pids.length * 2);
+            pids = Arrays.copyOf(pids, length);
+            priorities = Arrays.copyOf(priorities, length);
+            queued = Arrays.copyOf(queued, length);
+            keys = Arrays.copyOf(keys, length);
+            next = Arrays.copyOf(next, length);
+            prev = Arrays.copyOf(prev, length);
+            enqueuedAt = Arrays.copyOf(enqueuedAt, length);
+        }
+    }
+}
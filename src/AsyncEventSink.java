@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Event sink that copies each event into a preallocated multi-producer ring
+// buffer and hands it to a listener on a background thread, keeping console
+// or file I/O out of the scheduler's critical section. Publishing never blocks
+// or allocates: when the consumer falls behind, new events are dropped and
+// counted. An idle consumer parks until the next publish unparks it.
+public class AsyncEventSink implements SchedulerEventSink, AutoCloseable {
+    private static final SchedulerEvent[] EVENTS = SchedulerEvent.values();
+
+    @FunctionalInterface
+    public interface Listener {
+        void onEvent(long nanoTime, SchedulerEvent event, int pid, int priority, int processor);
+    }
+
+    private final int mask;
+    private final long[] timestamps;
+    private final int[] events;
+    private final int[] pids;
+    private final int[] priorities;
+    private final int[] processors;
+    // Sequence stored in a slot once its fields are written
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running = true;
+    // Set while the consumer is about to park or parked on an empty ring
+    private volatile boolean parked;
+    private final Listener listener;
+    private final Thread consumer;
+
+    // Capacity is rounded up to a power of two
+    public AsyncEventSink(int capacity, Listener listener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.events = new int[size];
+        this.pids = new int[size];
+        this.priorities = new int[size];
+        this.processors = new int[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.listener = listener;
+        this.consumer = new Thread(this::drainLoop, "scheduler-events");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Prints events in the format OS used to write to System.out directly
+    public static AsyncEventSink console() {
+        return new AsyncEventSink(1 << 16, (nanoTime, event, pid, priority, processor) -> {
+            switch (event) {
+                case REGISTERED -> System.out.println("Registered process " + pid + " with priority " + priority);
+                case ENQUEUED -> System.out.println("Enqueued process " + pid + " with priority " + priority);
+                case ALLOCATED -> System.out.println("Allocated processor " + processor + " to process " + pid);
+                case FREED -> System.out.println("Freed processor " + processor + " from process " + pid);
+                case SIGNALED -> System.out.println("Signaled process: " + pid);
+                case TERMINATED -> System.out.println("Terminating process of ID: " + pid);
+                case DEQUEUED -> System.out.println("Dequeued process " + pid + " without a processor");
+            }
+        });
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void publish(SchedulerEvent event, int pid, int priority, int processor) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int index = (int) sequence & mask;
+        timestamps[index] = System.nanoTime();
+        events[index] = event.ordinal();
+        pids[index] = pid;
+        priorities[index] = priority;
+        processors[index] = processor;
+        // A volatile write, so either the consumer's re-check sees it or we see parked
+        published.set(index, sequence);
+        if (parked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // Delivers everything published so far, then stops the consumer thread
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long next = consumed;
+        while (true) {
+            int index = (int) next & mask;
+            if (published.get(index) == next) {
+                listener.onEvent(timestamps[index], EVENTS[events[index]], pids[index], priorities[index], processors[index]);
+                consumed = ++next;
+            } else if (running || claimed.get() != next) {
+                parked = true;
+                if (published.get(index) != next && (running || claimed.get() != next)) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+// Completely-fair-scheduler style policy. Each process accumulates virtual
+// runtime, its real running time scaled down by a weight, and the waiting
+// process with the least virtual runtime runs next. Priorities map linearly
+// onto Linux nice values -20..19 and those onto the kernel's weight table
+// (1024 at nice 0, 1.25x per step), so a process gets CPU in proportion to its
+// weight and nobody starves. A new or long-waiting process is placed no
+// further back than the minimum virtual runtime minus a small credit.
+public class CfsPolicy extends KeyOrderedPolicy {
+    private static final long NICE_0_WEIGHT = 1024;
+    public static final long DEFAULT_SLEEPER_CREDIT_NANOS = 3_000_000;
+
+    private final long[] weights;
+    private final long sleeperCreditNanos;
+    private long minVruntime;
+
+    // Per slot
+    private long[] vruntimes = new long[16];
+    private long[] dispatchedAt = new long[16];
+    private boolean[] known = new boolean[16];
+
+    public CfsPolicy(int priorityLevels) {
+        this(priorityLevels, DEFAULT_SLEEPER_CREDIT_NANOS);
+    }
+
+    public CfsPolicy(int priorityLevels, long sleeperCreditNanos) {
+        super(priorityLevels);
+        this.sleeperCreditNanos = sleeperCreditNanos;
+        weights = new long[priorityLevels];
+        for (int priority = 0; priority < priorityLevels; priority++) {
+            int nice = -20 + (int) ((long) priority * 40 / priorityLevels);
+            weights[priority] = Math.max(1, Math.round(NICE_0_WEIGHT / Math.pow(1.25, nice)));
+        }
+    }
+
+    public long weight(int priority) {
+        return weights[priority];
+    }
+
+    @Override
+    protected long keyFor(int slot, int priority, long now) {
+        if (!known[slot]) {
+            known[slot] = true;
+            vruntimes[slot] = minVruntime;
+        } else {
+            vruntimes[slot] = Math.max(vruntimes[slot], minVruntime - sleeperCreditNanos);
+        }
+        return vruntimes[slot];
+    }
+
+    // The minimum only moves forward, so late arrivals cannot claim the past
+    @Override
+    protected void polled(int slot) {
+        minVruntime = Math.max(minVruntime, vruntimes[slot]);
+    }
+
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        ensureCapacity(slot);
+        return firstKey() <= vruntimes[slot] + scaled(now - dispatchedAt[slot], priority);
+    }
+
+    @Override
+    public void onDispatched(int pid, int slot, int priority, long now) {
+        ensureCapacity(slot);
+        if (!known[slot]) {
+            known[slot] = true;
+            vruntimes[slot] = minVruntime;
+        }
+        pids[slot] = pid;
+        dispatchedAt[slot] = now;
+    }
+
+    @Override
+    public void onDescheduled(int pid, int slot, int priority, long now) {
+        vruntimes[slot] += scaled(now - dispatchedAt[slot], priority);
+    }
+
+    @Override
+    public void onTerminated(int pid, int slot) {
+        if (slot < known.length) {
+            known[slot] = false;
+        }
+    }
+
+    @Override
+    protected void grow(int length) {
+        vruntimes = Arrays.copyOf(vruntimes, length);
+        dispatchedAt = Arrays.copyOf(dispatchedAt, length);
+        known = Arrays.copyOf(known, length);
+    }
+
+    private long scaled(long runNanos, int priority) {
+        return runNanos * NICE_0_WEIGHT / weights[priority];
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Lock-free counterpart of OS. Processor slots are claimed from a ProcessorPool
+// bitmap and waiting processes sit in one queue per priority level, so
+// start/terminate never take a global lock. Lower priority values are
+// dispatched first and processes of the same priority are served FIFO, as
+// checked by the UR4-UR6 tests.
+public class ConcurrentOS implements OS_sim_interface {
+    private static final int FREE = -1;
+
+    private static final class Process {
+        final int pid;
+        final int priority;
+        volatile int processor = FREE;
+        volatile Thread waiter;
+
+        Process(int pid, int priority) {
+            this.pid = pid;
+            this.priority = priority;
+        }
+    }
+
+    private final boolean fair;
+    private final AtomicInteger nextPid = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Process> processes = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Queue<Process>> processQueues = new ConcurrentSkipListMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile ProcessorPool processors = new ProcessorPool(1);
+    private volatile SchedulerEventSink events = SchedulerEventSink.DISABLED;
+
+    public ConcurrentOS() {
+        this(false);
+    }
+
+    // When fair, a newly started process never barges ahead of processes that
+    // are already waiting, even if it finds a free processor first
+    public ConcurrentOS(boolean fair) {
+        this.fair = fair;
+    }
+
+    // The sink is called concurrently from every process thread
+    public void setEventSink(SchedulerEventSink sink) {
+        events = sink == null ? SchedulerEventSink.DISABLED : sink;
+    }
+
+    // Unlike OS, running assignments are not carried across: the resize takes
+    // every processor of the old pool first and throws IllegalStateException,
+    // changing nothing, while any process holds one
+    @Override
+    public void set_number_of_processors(int nProcessors) {
+        ProcessorPool resized = new ProcessorPool(nProcessors);
+        if (!processors.claimAll()) {
+            // A start() that found none free meanwhile may have queued
+            dispatch();
+            throw new IllegalStateException("Cannot resize while processes hold processors");
+        }
+        processors = resized;
+        dispatch();
+    }
+
+    @Override
+    public int reg(int priority) {
+        int pid = nextPid.getAndIncrement();
+        processes.put(pid, new Process(pid, priority));
+        events.publish(SchedulerEvent.REGISTERED, pid, priority, -1);
+        return pid;
+    }
+
+    @Override
+    public void start(int ID) {
+        Process process = processes.get(ID);
+        process.waiter = Thread.currentThread();
+        if ((!fair || waiting.get() == 0) && claimProcessor(process)) {
+            return;
+        }
+        enqueue(process);
+        dispatch();
+        awaitAssignment(process);
+    }
+
+    @Override
+    public void schedule(int ID) {
+        Process process = processes.get(ID);
+        int processor = process.processor;
+        if (processor == FREE) {
+            start(ID);
+            return;
+        }
+        // Only yield to a waiter of equal or higher priority; otherwise keep running
+        Process next = pollWaiter(process.priority);
+        if (next == null) {
+            return;
+        }
+        process.waiter = Thread.currentThread();
+        process.processor = FREE;
+        events.publish(SchedulerEvent.FREED, ID, process.priority, processor);
+        enqueue(process);
+        grant(processor, next);
+        awaitAssignment(process);
+    }
+
+    @Override
+    public void terminate(int ID) {
+        Process process = processes.remove(ID);
+        if (process != null) {
+            events.publish(SchedulerEvent.TERMINATED, ID, process.priority, -1);
+            releaseProcessor(process);
+            dispatch();
+        }
+    }
+
+    private boolean claimProcessor(Process process) {
+        int processor = processors.claim();
+        if (processor == FREE) {
+            return false;
+        }
+        process.processor = processor;
+        events.publish(SchedulerEvent.ALLOCATED, process.pid, process.priority, processor);
+        return true;
+    }
+
+    private void releaseProcessor(Process process) {
+        int processor = process.processor;
+        if (processor != FREE) {
+            process.processor = FREE;
+            ProcessorPool pool = processors;
+            if (processor < pool.size()) {
+                pool.release(processor);
+            }
+            events.publish(SchedulerEvent.FREED, process.pid, process.priority, processor);
+        }
+    }
+
+    // Hands a processor the caller already owns straight to a dequeued waiter
+    private void grant(int processor, Process next) {
+        next.processor = processor;
+        events.publish(SchedulerEvent.ALLOCATED, next.pid, next.priority, processor);
+        LockSupport.unpark(next.waiter);
+        events.publish(SchedulerEvent.SIGNALED, next.pid, next.priority, processor);
+    }
+
+    private void enqueue(Process process) {
+        processQueues.computeIfAbsent(process.priority, p -> new ConcurrentLinkedQueue<>()).offer(process);
+        waiting.incrementAndGet();
+        events.publish(SchedulerEvent.ENQUEUED, process.pid, process.priority, -1);
+    }
+
+    // Removes the most urgent waiter whose priority value is at most maxPriority
+    private Process pollWaiter(int maxPriority) {
+        if (waiting.get() == 0) {
+            return null;
+        }
+        for (Queue<Process> queue : processQueues.headMap(maxPriority, true).values()) {
+            Process process = queue.poll();
+            if (process != null) {
+                waiting.decrementAndGet();
+                return process;
+            }
+        }
+        return null;
+    }
+
+    // Pairs free processors with waiting processes until one side runs out.
+    // Every path that frees a processor or enqueues a process calls this, so a
+    // waiter can never be stranded next to an idle processor.
+    private void dispatch() {
+        while (waiting.get() > 0) {
+            int processor = processors.claim();
+            if (processor == FREE) {
+                return;
+            }
+            Process next = pollWaiter(Integer.MAX_VALUE);
+            if (next == null) {
+                processors.release(processor);
+                continue;
+            }
+            grant(processor, next);
+        }
+    }
+
+    // An interrupted waiter leaves the queue and returns without a processor,
+    // interrupt flag set; if a dispatcher already took it off the queue, its
+    // grant is under way and it waits for that instead
+    private void awaitAssignment(Process process) {
+        boolean interrupted = false;
+        while (process.processor == FREE) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                if (withdraw(process)) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean withdraw(Process process) {
+        Queue<Process> queue = processQueues.get(process.priority);
+        if (queue == null || !queue.remove(process)) {
+            return false;
+        }
+        waiting.decrementAndGet();
+        events.publish(SchedulerEvent.DEQUEUED, process.pid, process.priority, -1);
+        return true;
+    }
+}
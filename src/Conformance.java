@@ -0,0 +1,527 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Conformance harness for OS_sim_interface implementations: the UR1-UR6
+// scenarios of Tests plus randomized stress and linearizability checks, all
+// scenarios of all implementations running in parallel, each on its own
+// scheduler instance with its own session log.
+//
+// Nothing sleeps. A scripted process that "holds" its processor waits at a
+// gate until the driver releases it, and after every step the driver waits
+// until the run is quiescent: each process is held at its gate, finished,
+// or parked inside the scheduler after the scheduler reported it ENQUEUED
+// through its event sink. The next step then starts from the same state
+// every time, so session order is deterministic. Implementations without a
+// setEventSink method are judged by thread state alone, which cannot tell
+// a queued process from one briefly parked on a lock.
+//
+// The linearizability check replays the event history against a sequential
+// strict-priority model, so it only runs for OS, which publishes events
+// under its lock in the order the transitions happen.
+//
+// Usage: java Conformance [implementation class ...]
+//    or: java Main conformance [implementation class ...]
+public class Conformance {
+    // Only reached when a scenario stops making progress
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+    private static final long POLL_NANOS = 20_000;
+    private static final int SESSIONS = 3;
+    private static final long STRESS_SEED = 0x5EED;
+
+    public static final class Result {
+        public final String implementation;
+        public final String scenario;
+        public final boolean passed;
+        public final String detail;
+        public final long elapsedNanos;
+
+        Result(String implementation, String scenario, boolean passed, String detail, long elapsedNanos) {
+            this.implementation = implementation;
+            this.scenario = scenario;
+            this.passed = passed;
+            this.detail = detail;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-18s %-13s %-6s %7.2fms  %s", implementation, scenario,
+                    passed ? "PASS" : "FAIL", elapsedNanos / 1e6, detail);
+        }
+    }
+
+    // An implementation under test; a fresh instance is made for every scenario
+    public static final class Target {
+        final String name;
+        final Supplier<OS_sim_interface> factory;
+
+        public Target(String name, Supplier<OS_sim_interface> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    private interface Scenario {
+        // Returns a detail line, or throws Failure
+        String play(OS_sim_interface os) throws Exception;
+    }
+
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(String message) {
+            super(message);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Target> targets = new ArrayList<>();
+        for (String name : args) {
+            Class<?> type = Class.forName(name);
+            targets.add(new Target(name, () -> {
+                try {
+                    return (OS_sim_interface) type.getConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalArgumentException("Cannot create " + name, e);
+                }
+            }));
+        }
+        if (targets.isEmpty()) {
+            targets = defaultTargets();
+        }
+        long begin = System.nanoTime();
+        List<Result> results = run(targets);
+        long elapsed = System.nanoTime() - begin;
+        int failed = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            failed += result.passed ? 0 : 1;
+        }
+        System.out.printf(Locale.ROOT, "%d of %d checks passed in %.1fms%n", results.size() - failed, results.size(), elapsed / 1e6);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    public static List<Target> defaultTargets() {
+        return Arrays.asList(
+                new Target("OS", OS::new),
+                new Target("ConcurrentOS", ConcurrentOS::new),
+                new Target("ConcurrentOS(fair)", () -> new ConcurrentOS(true)),
+                new Target("LocalQueueOS", LocalQueueOS::new));
+    }
+
+    // Runs every scenario against every target at once and returns the
+    // results in target then scenario order
+    public static List<Result> run(List<Target> targets) throws InterruptedException {
+        String[] names = {"UR1", "UR2", "UR3", "UR4", "UR5", "UR6", "UR6b", "stress", "linearizable"};
+        Scenario[] scenarios = {
+                Conformance::ur1, Conformance::ur2, Conformance::ur3, Conformance::ur4, Conformance::ur5,
+                Conformance::ur6, Conformance::ur6b, Conformance::stress, Conformance::linearizable};
+        ExecutorService executor = Executors.newFixedThreadPool(targets.size() * scenarios.length, runnable -> {
+            Thread thread = new Thread(runnable, "conformance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Target target : targets) {
+                for (int i = 0; i < scenarios.length; i++) {
+                    Scenario scenario = scenarios[i];
+                    String name = names[i];
+                    futures.add(executor.submit(() -> play(target, name, scenario)));
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result play(Target target, String name, Scenario scenario) {
+        long begin = System.nanoTime();
+        try {
+            String detail = scenario.play(target.factory.get());
+            return new Result(target.name, name, true, detail, System.nanoTime() - begin);
+        } catch (Throwable t) {
+            String detail = t instanceof Failure ? t.getMessage() : t.toString();
+            return new Result(target.name, name, false, detail, System.nanoTime() - begin);
+        }
+    }
+
+    // UR1: every registration gets its own PID
+    private static String ur1(OS_sim_interface os) {
+        Set<Integer> pids = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            int pid = os.reg(1);
+            if (pid < 0 || !pids.add(pid)) {
+                throw new Failure("reg returned " + pid + " after " + pids);
+            }
+        }
+        return "PIDs " + pids;
+    }
+
+    // UR2: one process keeps its processor through both yields
+    private static String ur2(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 1);
+        Actor p0 = run.spawn(1, true);
+        run.release(p0);
+        return run.expect("p0 s0", "p0 s1", "p0 s2");
+    }
+
+    // UR3: equal priorities on one processor take turns in arrival order
+    private static String ur3(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 1);
+        Actor p0 = run.spawn(1, true);
+        run.spawn(1, false);
+        run.spawn(1, false);
+        run.release(p0);
+        return run.expect("p0 s0", "p1 s0", "p2 s0", "p0 s1", "p1 s1", "p2 s1", "p0 s2", "p1 s2", "p2 s2");
+    }
+
+    // UR4: with two processors, P1 and P2 share one while P0 holds the other
+    private static String ur4(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 2);
+        Actor p0 = run.spawn(1, true);
+        Actor p1 = run.spawn(1, true);
+        run.spawn(1, false);
+        run.release(p1);
+        run.release(p0);
+        return run.expect("p0 s0", "p1 s0", "p2 s0", "p1 s1", "p2 s1", "p1 s2", "p2 s2", "p0 s1", "p0 s2");
+    }
+
+    // UR5: the less urgent process waits until both urgent ones are done
+    private static String ur5(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 1);
+        Actor p0 = run.spawn(10, true);
+        run.spawn(10, false);
+        run.spawn(20, false);
+        run.release(p0);
+        return run.expect("p0 s0", "p1 s0", "p0 s1", "p1 s1", "p0 s2", "p1 s2", "p2 s0", "p2 s1", "p2 s2");
+    }
+
+    // UR6: a free second processor serves each arrival in turn while P0 holds the first
+    private static String ur6(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 2);
+        Actor p0 = run.spawn(10, true);
+        run.spawn(10, false);
+        run.spawn(20, false);
+        run.release(p0);
+        return run.expect("p0 s0", "p1 s0", "p1 s1", "p1 s2", "p2 s0", "p2 s1", "p2 s2", "p0 s1", "p0 s2");
+    }
+
+    // UR6 (second example): a yielding less urgent process gives way to a
+    // more urgent waiter and gets its processor back only when it is done
+    private static String ur6b(OS_sim_interface os) throws InterruptedException {
+        Run run = new Run(os, 2);
+        Actor p0 = run.spawn(10, true);
+        Actor p1 = run.spawn(20, true);
+        run.spawn(10, false);
+        run.release(p1);
+        run.release(p0);
+        return run.expect("p0 s0", "p1 s0", "p2 s0", "p2 s1", "p2 s2", "p1 s1", "p1 s2", "p0 s1", "p0 s2");
+    }
+
+    // Random priorities and yield counts on a few processors: every process
+    // finishes and no more processes run at once than there are processors
+    private static String stress(OS_sim_interface os) throws InterruptedException {
+        return stress(os, null);
+    }
+
+    // The stress run, with every published event replayed in order against a
+    // sequential model of strict priority, FIFO within a level
+    private static String linearizable(OS_sim_interface os) throws InterruptedException {
+        if (!(os instanceof OS)) {
+            return "skipped: events are not published in linearization order";
+        }
+        ConcurrentLinkedQueue<int[]> history = new ConcurrentLinkedQueue<>();
+        ((OS) os).setEventSink((event, pid, priority, processor) ->
+                history.add(new int[] {event.ordinal(), pid, priority, processor}));
+        stress(os, history);
+        return checkHistory(history, 3);
+    }
+
+    private static String stress(OS_sim_interface os, ConcurrentLinkedQueue<int[]> history) throws InterruptedException {
+        int processors = 3;
+        int processes = 24;
+        os.set_number_of_processors(processors);
+        SplittableRandom random = new SplittableRandom(STRESS_SEED);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        AtomicInteger sessions = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        int expectedSessions = 0;
+        Thread[] threads = new Thread[processes];
+        for (int i = 0; i < processes; i++) {
+            int pid = os.reg(random.nextInt(4));
+            int yields = random.nextInt(1, 12);
+            expectedSessions += yields + 1;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int session = 0; session <= yields; session++) {
+                        if (session == 0) {
+                            os.start(pid);
+                        } else {
+                            os.schedule(pid);
+                        }
+                        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sessions.incrementAndGet();
+                        running.decrementAndGet();
+                    }
+                    os.terminate(pid);
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "conformance-stress");
+            threads[i].setDaemon(true);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+            if (thread.isAlive()) {
+                throw new Failure("stuck with " + sessions.get() + " of " + expectedSessions + " sessions run (seed " + STRESS_SEED + ")");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new Failure("process failed: " + failures.peek());
+        }
+        if (mostRunning.get() > processors || sessions.get() != expectedSessions) {
+            throw new Failure(mostRunning.get() + " ran at once on " + processors + " processors, " + sessions.get()
+                    + " of " + expectedSessions + " sessions (seed " + STRESS_SEED + ")");
+        }
+        return processes + " processes, " + sessions.get() + " sessions, at most " + mostRunning.get() + " at once";
+    }
+
+    private static String checkHistory(ConcurrentLinkedQueue<int[]> history, int processors) {
+        List<ArrayDeque<Integer>> queues = new ArrayList<>();
+        Set<Integer> running = new HashSet<>();
+        int step = 0;
+        for (int[] entry : history) {
+            SchedulerEvent event = SchedulerEvent.values()[entry[0]];
+            int pid = entry[1];
+            int priority = entry[2];
+            while (queues.size() <= priority) {
+                queues.add(new ArrayDeque<>());
+            }
+            switch (event) {
+                case ENQUEUED -> queues.get(priority).addLast(pid);
+                case ALLOCATED -> {
+                    ArrayDeque<Integer> head = null;
+                    for (ArrayDeque<Integer> queue : queues) {
+                        if (!queue.isEmpty()) {
+                            head = queue;
+                            break;
+                        }
+                    }
+                    if (head == null) {
+                        // A fresh start found a free processor with nobody waiting
+                    } else if (head.peekFirst() != pid) {
+                        throw new Failure("event " + step + ": " + pid + " at priority " + priority
+                                + " granted while " + head.peekFirst() + " was first in line");
+                    } else {
+                        head.removeFirst();
+                    }
+                    if (!running.add(pid) || running.size() > processors) {
+                        throw new Failure("event " + step + ": " + running.size() + " processes running after granting " + pid);
+                    }
+                }
+                case FREED -> running.remove(pid);
+                case TERMINATED, DEQUEUED -> queues.get(priority).remove(pid);
+                default -> {
+                }
+            }
+            step++;
+        }
+        return step + " events match the sequential model";
+    }
+
+    // One scripted scenario: processes registered in order and named p0,
+    // p1, ... run start, two schedules and terminate like Tests'
+    // ProcessSimThread2, logging each session as it begins
+    private static final class Run implements SchedulerEventSink {
+        final OS_sim_interface os;
+        final boolean observed;
+        final Thread driver = Thread.currentThread();
+        final ConcurrentLinkedQueue<String> sessions = new ConcurrentLinkedQueue<>();
+        final ConcurrentHashMap<Integer, Actor> byPid = new ConcurrentHashMap<>();
+        final List<Actor> actors = new ArrayList<>();
+        volatile Throwable failure;
+
+        Run(OS_sim_interface os, int processors) {
+            this.os = os;
+            this.observed = observe(os, this);
+            os.set_number_of_processors(processors);
+        }
+
+        @Override
+        public void publish(SchedulerEvent event, int pid, int priority, int processor) {
+            Actor actor = byPid.get(pid);
+            if (actor != null) {
+                if (event == SchedulerEvent.ENQUEUED) {
+                    actor.queued = true;
+                } else if (event == SchedulerEvent.ALLOCATED) {
+                    actor.queued = false;
+                }
+            }
+            LockSupport.unpark(driver);
+        }
+
+        // Starts a process; if hold, it keeps its first processor until released
+        Actor spawn(int priority, boolean hold) throws InterruptedException {
+            Actor actor = new Actor(this, actors.size(), os.reg(priority), hold);
+            byPid.put(actor.pid, actor);
+            actors.add(actor);
+            actor.thread.start();
+            awaitQuiescence();
+            return actor;
+        }
+
+        void release(Actor actor) throws InterruptedException {
+            actor.status = Actor.IN_CALL;
+            actor.proceed.release();
+            awaitQuiescence();
+        }
+
+        // Lets every process finish, then compares the session log
+        String expect(String... expected) throws InterruptedException {
+            for (Actor actor : actors) {
+                if (actor.status == Actor.HELD) {
+                    release(actor);
+                }
+            }
+            awaitQuiescence();
+            for (Actor actor : actors) {
+                if (actor.status != Actor.DONE) {
+                    throw new Failure("p" + actor.index + " never finished; sessions " + sessions);
+                }
+            }
+            List<String> actual = new ArrayList<>(sessions);
+            if (!actual.equals(Arrays.asList(expected))) {
+                throw new Failure("sessions " + actual + ", expected " + Arrays.asList(expected));
+            }
+            return String.join(", ", actual);
+        }
+
+        void awaitQuiescence() throws InterruptedException {
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (true) {
+                if (failure != null) {
+                    throw new Failure("process failed: " + failure);
+                }
+                boolean quiescent = true;
+                for (Actor actor : actors) {
+                    quiescent &= actor.settled();
+                }
+                if (quiescent) {
+                    return;
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new Failure("no progress after sessions " + sessions);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, POLL_NANOS);
+            }
+        }
+
+        // Subscribes to the implementation's events if it has an event sink
+        private static boolean observe(OS_sim_interface os, SchedulerEventSink sink) {
+            try {
+                os.getClass().getMethod("setEventSink", SchedulerEventSink.class).invoke(os, sink);
+                return true;
+            } catch (ReflectiveOperationException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class Actor implements Runnable {
+        static final int IN_CALL = 0;
+        static final int HELD = 1;
+        static final int DONE = 2;
+
+        final Run run;
+        final int index;
+        final int pid;
+        final boolean hold;
+        final Thread thread;
+        final Semaphore proceed = new Semaphore(0);
+        volatile int status = IN_CALL;
+        volatile boolean queued;
+
+        Actor(Run run, int index, int pid, boolean hold) {
+            this.run = run;
+            this.index = index;
+            this.pid = pid;
+            this.hold = hold;
+            thread = new Thread(this, "conformance-p" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int session = 0; session < SESSIONS; session++) {
+                    queued = false;
+                    status = IN_CALL;
+                    if (session == 0) {
+                        run.os.start(pid);
+                    } else {
+                        run.os.schedule(pid);
+                    }
+                    run.sessions.add("p" + index + " s" + session);
+                    if (session == 0 && hold) {
+                        status = HELD;
+                        LockSupport.unpark(run.driver);
+                        proceed.acquire();
+                    }
+                }
+                queued = false;
+                status = IN_CALL;
+                run.os.terminate(pid);
+            } catch (Throwable t) {
+                run.failure = t;
+            } finally {
+                status = DONE;
+                LockSupport.unpark(run.driver);
+            }
+        }
+
+        // Held, finished, or parked waiting in the queue
+        boolean settled() {
+            if (status != IN_CALL) {
+                return true;
+            }
+            Thread.State state = thread.getState();
+            return (queued || !run.observed) && (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING);
+        }
+    }
+}
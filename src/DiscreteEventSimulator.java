@@ -0,0 +1,358 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Single-threaded discrete-event version of OS. Processes arrive, run a list
+// of sessions and yield between them exactly like Tests.ProcessSimThread2,
+// but time is a virtual clock advanced from an event heap instead of
+// Thread.sleep, so runs are fast and reproducible. The scheduling rules are
+// OS's (lowest free ProcessorPool slot, the ready process and yield decisions
+// chosen by a SchedulingPolicy, strict priority by default), and the same
+// ProcessTable/SchedulingPolicy/ProcessorPool structures back it. Policies
+// see the virtual clock, which is how their fairness is compared.
+// Tests.discrete_event_vs_os_example_test drives a real OS through the same
+// script on a virtual clock and checks the two agree event for event.
+public class DiscreteEventSimulator {
+
+    @FunctionalInterface
+    public interface SessionListener {
+        // Called when a process begins session number `session` (0 = first)
+        void onSession(long time, int pid, int session);
+    }
+
+    public static final class Result {
+        public final long events;
+        public final long virtualTime;
+        public final int completed;
+        public final double utilization;
+        public final double[] meanWaitByPriority;
+        // Processor time consumed by processes of each priority, over the whole simulation
+        public final long[] cpuTimeByPriority;
+
+        Result(long events, long virtualTime, int completed, double utilization, double[] meanWaitByPriority,
+                long[] cpuTimeByPriority) {
+            this.events = events;
+            this.virtualTime = virtualTime;
+            this.completed = completed;
+            this.utilization = utilization;
+            this.meanWaitByPriority = meanWaitByPriority;
+            this.cpuTimeByPriority = cpuTimeByPriority;
+        }
+
+        @Override
+        public String toString() {
+            return "events=" + events + ", virtualTime=" + virtualTime + ", completed=" + completed
+                    + ", utilization=" + String.format("%.3f", utilization);
+        }
+    }
+
+    private static final byte ARRIVAL = 0;
+    private static final byte SESSION_END = 1;
+
+    private final ProcessTable processTable = new ProcessTable();
+    private SchedulingPolicy policy;
+    private final ProcessorPool processors;
+    private final EventHeap heap = new EventHeap();
+    private SchedulerEventSink events = SchedulerEventSink.DISABLED;
+    private SessionListener sessionListener;
+
+    // Per process table slot
+    private long[][] sessionLengths = new long[16][];
+    private int[] nextSession = new int[16];
+    private long[] enqueuedAt = new long[16];
+
+    private long now;
+    private long eventCount;
+    private int completed;
+    private long busyTime;
+    private final long[] waitTotals;
+    private final long[] waitCounts;
+    private final long[] cpuTimes;
+
+    public DiscreteEventSimulator(int nProcessors, int priorityLevels) {
+        processors = new ProcessorPool(nProcessors);
+        policy = new PriorityPolicy(priorityLevels);
+        waitTotals = new long[priorityLevels];
+        waitCounts = new long[priorityLevels];
+        cpuTimes = new long[priorityLevels];
+    }
+
+    // Replaces the default strict-priority policy; it must have as many levels
+    // as the simulator and be set before any process arrives
+    public void setSchedulingPolicy(SchedulingPolicy newPolicy) {
+        if (newPolicy.levels() != waitTotals.length) {
+            throw new IllegalArgumentException("Policy has " + newPolicy.levels() + " levels, simulator " + waitTotals.length);
+        }
+        if (!policy.isEmpty() || processTable.liveCount() > 0) {
+            throw new IllegalStateException("Cannot change policy once processes are running");
+        }
+        policy = newPolicy;
+    }
+
+    public void setEventSink(SchedulerEventSink sink) {
+        events = sink == null ? SchedulerEventSink.DISABLED : sink;
+    }
+
+    public void setSessionListener(SessionListener listener) {
+        sessionListener = listener;
+    }
+
+    // Current virtual time; valid inside sink and listener callbacks
+    public long now() {
+        return now;
+    }
+
+    // Adds a process arriving at the given time that runs the given sessions,
+    // yielding between consecutive ones; returns its PID
+    public int addProcess(long arrivalTime, int priority, long... sessions) {
+        if (priority < 0 || priority >= policy.levels()) {
+            throw new IllegalArgumentException("Priority " + priority + " outside 0.." + (policy.levels() - 1));
+        }
+        if (sessions.length == 0) {
+            throw new IllegalArgumentException("A process needs at least one session");
+        }
+        int pid = processTable.register(priority);
+        int slot = processTable.slot(pid);
+        if (slot >= sessionLengths.length) {
+            int length = Math.max(slot + 1, sessionLengths.length * 2);
+            sessionLengths = Arrays.copyOf(sessionLengths, length);
+            nextSession = Arrays.copyOf(nextSession, length);
+            enqueuedAt = Arrays.copyOf(enqueuedAt, length);
+        }
+        sessionLengths[slot] = sessions;
+        nextSession[slot] = 0;
+        events.publish(SchedulerEvent.REGISTERED, pid, priority, -1);
+        heap.push(Math.max(arrivalTime, now), ARRIVAL, pid);
+        return pid;
+    }
+
+    // Poisson arrivals with exponentially distributed session lengths and a
+    // uniform priority in [0, priorityRange); identical seeds give identical runs
+    public void addRandomWorkload(long seed, int nProcesses, double meanInterarrival, double meanSession,
+            int sessionsPerProcess, int priorityRange) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double arrival = now;
+        for (int i = 0; i < nProcesses; i++) {
+            arrival += exponential(random, meanInterarrival);
+            long[] sessions = new long[sessionsPerProcess];
+            for (int s = 0; s < sessionsPerProcess; s++) {
+                sessions[s] = Math.max(1, Math.round(exponential(random, meanSession)));
+            }
+            addProcess(Math.round(arrival), random.nextInt(priorityRange), sessions);
+        }
+    }
+
+    private static double exponential(SplittableRandom random, double mean) {
+        return -mean * Math.log(1.0 - random.nextDouble());
+    }
+
+    public Result run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    // Processes events up to and including the given virtual time
+    public Result run(long until) {
+        long startTime = now;
+        long startBusy = busyTime;
+        while (!heap.isEmpty() && heap.peekTime() <= until) {
+            now = heap.peekTime();
+            byte kind = heap.peekKind();
+            int pid = heap.pop();
+            eventCount++;
+            if (kind == ARRIVAL) {
+                start(pid);
+            } else {
+                endSession(pid);
+            }
+        }
+        long elapsed = now - startTime;
+        double utilization = elapsed == 0 ? 0 : (double) (busyTime - startBusy) / ((double) elapsed * processors.size());
+        double[] meanWait = new double[waitTotals.length];
+        for (int i = 0; i < meanWait.length; i++) {
+            meanWait[i] = waitCounts[i] == 0 ? 0 : (double) waitTotals[i] / waitCounts[i];
+        }
+        return new Result(eventCount, now, completed, utilization, meanWait, cpuTimes.clone());
+    }
+
+    private void start(int pid) {
+        int processor = processors.claim();
+        if (processor == -1) {
+            enqueue(pid);
+            return;
+        }
+        grant(pid, processor);
+    }
+
+    private void endSession(int pid) {
+        int slot = processTable.slot(pid);
+        int processor = processTable.processor(pid);
+        int priority = processTable.priority(pid);
+        long session = sessionLengths[slot][nextSession[slot] - 1];
+        busyTime += session;
+        cpuTimes[priority] += session;
+        if (nextSession[slot] == sessionLengths[slot].length) {
+            terminate(pid, processor);
+            return;
+        }
+        // schedule(): the policy decides whether to give way and to whom
+        if (!policy.shouldYield(pid, slot, priority, now)) {
+            beginSession(pid);
+            return;
+        }
+        policy.onDescheduled(pid, slot, priority, now);
+        policy.enqueue(pid, slot, priority, now);
+        int next = policy.poll(now);
+        if (next == pid) {
+            policy.onDispatched(pid, slot, priority, now);
+            beginSession(pid);
+            return;
+        }
+        processTable.setProcessor(pid, -1);
+        events.publish(SchedulerEvent.FREED, pid, priority, processor);
+        markQueued(pid, slot, priority);
+        grant(next, processor);
+    }
+
+    private void terminate(int pid, int processor) {
+        events.publish(SchedulerEvent.TERMINATED, pid, processTable.priority(pid), -1);
+        int slot = processTable.slot(pid);
+        processTable.setProcessor(pid, -1);
+        processors.release(processor);
+        events.publish(SchedulerEvent.FREED, pid, processTable.priority(pid), processor);
+        policy.onDescheduled(pid, slot, processTable.priority(pid), now);
+        policy.onTerminated(pid, slot);
+        sessionLengths[slot] = null;
+        processTable.free(pid);
+        completed++;
+        if (!policy.isEmpty()) {
+            grant(policy.poll(now), processors.claim());
+        }
+    }
+
+    private void enqueue(int pid) {
+        int slot = processTable.slot(pid);
+        int priority = processTable.priority(pid);
+        policy.enqueue(pid, slot, priority, now);
+        markQueued(pid, slot, priority);
+    }
+
+    private void markQueued(int pid, int slot, int priority) {
+        processTable.setState(pid, ProcessTable.READY);
+        enqueuedAt[slot] = now;
+        events.publish(SchedulerEvent.ENQUEUED, pid, priority, -1);
+    }
+
+    private void grant(int pid, int processor) {
+        int slot = processTable.slot(pid);
+        int priority = processTable.priority(pid);
+        if (processTable.state(pid) == ProcessTable.READY) {
+            waitTotals[priority] += now - enqueuedAt[slot];
+            waitCounts[priority]++;
+            events.publish(SchedulerEvent.SIGNALED, pid, priority, processor);
+        }
+        processTable.setProcessor(pid, processor);
+        events.publish(SchedulerEvent.ALLOCATED, pid, priority, processor);
+        policy.onDispatched(pid, slot, priority, now);
+        beginSession(pid);
+    }
+
+    private void beginSession(int pid) {
+        int slot = processTable.slot(pid);
+        int session = nextSession[slot]++;
+        if (sessionListener != null) {
+            sessionListener.onSession(now, pid, session);
+        }
+        heap.push(now + sessionLengths[slot][session], SESSION_END, pid);
+    }
+
+    // Binary min-heap of (time, insertion sequence) in parallel primitive
+    // arrays; the sequence keeps simultaneous events in FIFO order
+    private static final class EventHeap {
+        private long[] times = new long[64];
+        private long[] sequences = new long[64];
+        private byte[] kinds = new byte[64];
+        private int[] pids = new int[64];
+        private int size;
+        private long nextSequence;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekTime() {
+            return times[0];
+        }
+
+        byte peekKind() {
+            return kinds[0];
+        }
+
+        void push(long time, byte kind, int pid) {
+            if (size == times.length) {
+                int length = size * 2;
+                times = Arrays.copyOf(times, length);
+                sequences = Arrays.copyOf(sequences, length);
+                kinds = Arrays.copyOf(kinds, length);
+                pids = Arrays.copyOf(pids, length);
+            }
+            long sequence = nextSequence++;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(time, sequence, parent)) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            set(i, time, sequence, kind, pid);
+        }
+
+        // Removes the earliest event and returns its PID
+        int pop() {
+            int pid = pids[0];
+            size--;
+            if (size > 0) {
+                long time = times[size];
+                long sequence = sequences[size];
+                byte kind = kinds[size];
+                int last = pids[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(times[child + 1], sequences[child + 1], child)) {
+                        child++;
+                    }
+                    if (!before(times[child], sequences[child], time, sequence)) {
+                        break;
+                    }
+                    move(child, i);
+                    i = child;
+                }
+                set(i, time, sequence, kind, last);
+            }
+            return pid;
+        }
+
+        private boolean before(long time, long sequence, int index) {
+            return before(time, sequence, times[index], sequences[index]);
+        }
+
+        private static boolean before(long time, long sequence, long otherTime, long otherSequence) {
+            return time < otherTime || (time == otherTime && sequence < otherSequence);
+        }
+
+        private void move(int from, int to) {
+            set(to, times[from], sequences[from], kinds[from], pids[from]);
+        }
+
+        private void set(int i, long time, long sequence, byte kind, int pid) {
+            times[i] = time;
+            sequences[i] = sequence;
+            kinds[i] = kind;
+            pids[i] = pid;
+        }
+    }
+}
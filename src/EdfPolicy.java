@@ -0,0 +1,51 @@
+// Earliest deadline first. Each stretch of work between yields is a job whose
+// absolute deadline is set when it becomes ready: the current time plus the
+// relative deadline of the process's priority. The waiting job with the
+// earliest deadline runs next, and a yielding process gives way when a waiter's
+// deadline is no later than its own next job's would be.
+public class EdfPolicy extends KeyOrderedPolicy {
+    public static final long DEFAULT_DEADLINE_STEP_NANOS = 1_000_000;
+
+    private final long[] relativeDeadlines;
+
+    // Priority p gets a relative deadline of (p + 1) milliseconds
+    public EdfPolicy(int priorityLevels) {
+        this(stepDeadlines(priorityLevels, DEFAULT_DEADLINE_STEP_NANOS));
+    }
+
+    // One relative deadline per priority level
+    public EdfPolicy(long[] relativeDeadlineNanos) {
+        super(relativeDeadlineNanos.length);
+        for (long deadline : relativeDeadlineNanos) {
+            if (deadline <= 0) {
+                throw new IllegalArgumentException("Relative deadlines must be positive: " + deadline);
+            }
+        }
+        relativeDeadlines = relativeDeadlineNanos.clone();
+    }
+
+    private static long[] stepDeadlines(int priorityLevels, long step) {
+        if (priorityLevels <= 0) {
+            throw new IllegalArgumentException("Priority levels must be positive: " + priorityLevels);
+        }
+        long[] deadlines = new long[priorityLevels];
+        for (int priority = 0; priority < priorityLevels; priority++) {
+            deadlines[priority] = (priority + 1) * step;
+        }
+        return deadlines;
+    }
+
+    public long relativeDeadline(int priority) {
+        return relativeDeadlines[priority];
+    }
+
+    @Override
+    protected long keyFor(int slot, int priority, long now) {
+        return now + relativeDeadlines[priority];
+    }
+
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        return firstKey() <= now + relativeDeadlines[priority];
+    }
+}
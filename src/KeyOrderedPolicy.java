@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.TreeSet;
+
+// Base for policies that run the waiting process with the smallest key
+// (virtual runtime, deadline). Waiting slots sit in a red-black tree ordered by
+// key and then by enqueue order, so insert, remove and poll are O(log n). A
+// key must not change while its slot is in the tree.
+abstract class KeyOrderedPolicy implements SchedulingPolicy {
+    private final int levels;
+    private final TreeSet<Integer> tree = new TreeSet<>(this::compareSlots);
+
+    // Per slot
+    protected int[] pids = new int[16];
+    protected long[] keys = new long[16];
+    private long[] sequences = new long[16];
+    private long nextSequence;
+
+    protected KeyOrderedPolicy(int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Priority levels must be positive: " + levels);
+        }
+        this.levels = levels;
+    }
+
+    // Key the process waits under, computed as it is enqueued
+    protected abstract long keyFor(int slot, int priority, long now);
+
+    @Override
+    public int levels() {
+        return levels;
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public void enqueue(int pid, int slot, int priority, long now) {
+        ensureCapacity(slot);
+        pids[slot] = pid;
+        keys[slot] = keyFor(slot, priority, now);
+        sequences[slot] = nextSequence++;
+        tree.add(slot);
+    }
+
+    @Override
+    public int poll(long now) {
+        Integer slot = tree.pollFirst();
+        if (slot == null) {
+            return -1;
+        }
+        polled(slot);
+        return pids[slot];
+    }
+
+    // Called with the slot poll() is about to hand out
+    protected void polled(int slot) {
+    }
+
+    @Override
+    public boolean remove(int pid, int slot, int priority) {
+        return slot < pids.length && pids[slot] == pid && tree.remove(slot);
+    }
+
+    // Smallest waiting key, or Long.MAX_VALUE when nothing waits
+    protected long firstKey() {
+        return tree.isEmpty() ? Long.MAX_VALUE : keys[tree.first()];
+    }
+
+    protected void ensureCapacity(int slot) {
+        if (slot >= pids.length) {
+            int length = Math.max(slot + 1, pids.length * 2);
+            pids = Arrays.copyOf(pids, length);
+            keys = Arrays.copyOf(keys, length);
+            sequences = Arrays.copyOf(sequences, length);
+            grow(length);
+        }
+    }
+
+    // Lets subclasses grow their own per-slot arrays alongside
+    protected void grow(int length) {
+    }
+
+    private int compareSlots(Integer a, Integer b) {
+        int byKey = Long.compare(keys[a], keys[b]);
+        return byKey != 0 ? byKey : Long.compare(sequences[a], sequences[b]);
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Load-test runner: drives the synthetic workload described by a
+// WorkloadSpec against any OS_sim_interface implementation and reports the
+// result as JSON. Arrivals are paced open-loop from the calling thread at the
+// target rate (or back to back at rate 0); each arriving process runs on its
+// own thread (virtual where available): reg(), start(), its CPU bursts with
+// think time and a schedule() between them, then terminate(). Start and yield
+// latencies are measured around the blocking calls; arrival lag is how late a
+// process arrived against its intended time, e.g. because maxLive processes
+// were already running. OS_sim_interface has no blocking call that gives the
+// processor up, so think time is spent holding it: cpuUtilization counts
+// burst time only and occupancy all the time processors were held.
+//
+// Usage: java LoadTest [key=value ...] [report=<file>]
+//    or: java Main load [key=value ...] [report=<file>]
+// See WorkloadSpec for the keys. The report goes to stdout unless a file is given.
+public class LoadTest {
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    public static final class PriorityReport {
+        public final int priority;
+        public final long processes;
+        public final LatencyHistogram startWait;
+        public final LatencyHistogram yieldWait;
+
+        PriorityReport(int priority, long processes, LatencyHistogram startWait, LatencyHistogram yieldWait) {
+            this.priority = priority;
+            this.processes = processes;
+            this.startWait = startWait;
+            this.yieldWait = yieldWait;
+        }
+    }
+
+    public static final class Report {
+        public final WorkloadSpec spec;
+        public final long completed;
+        public final int failures;
+        public final long elapsedNanos;
+        public final double throughputPerSecond;
+        public final double achievedArrivalRate;
+        public final double cpuUtilization;
+        public final double occupancy;
+        public final LatencyHistogram arrivalLag;
+        public final List<PriorityReport> priorities;
+
+        Report(WorkloadSpec spec, long completed, int failures, long elapsedNanos, double achievedArrivalRate,
+                double cpuUtilization, double occupancy, LatencyHistogram arrivalLag, List<PriorityReport> priorities) {
+            this.spec = spec;
+            this.completed = completed;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.throughputPerSecond = completed * 1e9 / Math.max(1, elapsedNanos);
+            this.achievedArrivalRate = achievedArrivalRate;
+            this.cpuUtilization = cpuUtilization;
+            this.occupancy = occupancy;
+            this.arrivalLag = arrivalLag;
+            this.priorities = priorities;
+        }
+
+        // Latencies are in nanoseconds, as the upper bound of their
+        // LatencyHistogram bucket
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\n  \"spec\": {");
+            String separator = "";
+            for (Map.Entry<String, String> entry : spec.values().entrySet()) {
+                json.append(separator).append('"').append(entry.getKey()).append("\": ").append(string(entry.getValue()));
+                separator = ", ";
+            }
+            json.append("},\n");
+            json.append("  \"completed\": ").append(completed).append(",\n");
+            json.append("  \"failures\": ").append(failures).append(",\n");
+            json.append("  \"elapsedNanos\": ").append(elapsedNanos).append(",\n");
+            json.append("  \"throughputPerSecond\": ").append(number(throughputPerSecond)).append(",\n");
+            json.append("  \"achievedArrivalRate\": ").append(number(achievedArrivalRate)).append(",\n");
+            json.append("  \"cpuUtilization\": ").append(number(cpuUtilization)).append(",\n");
+            json.append("  \"occupancy\": ").append(number(occupancy)).append(",\n");
+            json.append("  \"arrivalLag\": ").append(latencies(arrivalLag)).append(",\n");
+            json.append("  \"priorities\": [");
+            separator = "\n";
+            for (PriorityReport priority : priorities) {
+                json.append(separator).append("    {\"priority\": ").append(priority.priority)
+                        .append(", \"processes\": ").append(priority.processes)
+                        .append(", \"startWait\": ").append(latencies(priority.startWait))
+                        .append(", \"yieldWait\": ").append(latencies(priority.yieldWait)).append('}');
+                separator = ",\n";
+            }
+            return json.append("\n  ]\n}\n").toString();
+        }
+
+        private static String latencies(LatencyHistogram histogram) {
+            StringBuilder json = new StringBuilder("{\"count\": ").append(histogram.count());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.append(", \"").append(PERCENTILE_NAMES[i]).append("\": ").append(histogram.percentileNanos(PERCENTILES[i]));
+            }
+            json.append(", \"max\": ").append(histogram.maxNanos());
+            return json.append(", \"mean\": ").append(number(histogram.meanNanos())).append('}').toString();
+        }
+
+        private static String number(double value) {
+            return String.format(Locale.ROOT, "%.4f", value);
+        }
+
+        // A JSON string literal; spec values come from the command line or a file
+        private static String string(String value) {
+            StringBuilder json = new StringBuilder("\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            return json.append('"').toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path reportFile = null;
+        List<String> specArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("report=")) {
+                reportFile = Path.of(arg.substring("report=".length()));
+            } else {
+                specArgs.add(arg);
+            }
+        }
+        WorkloadSpec spec = WorkloadSpec.parse(specArgs.toArray(new String[0]));
+        OS_sim_interface os = (OS_sim_interface) Class.forName(spec.implementation).getConstructor().newInstance();
+        String json = run(spec, os, ProcessRuntime.defaultThreadFactory()).toJson();
+        if (reportFile == null) {
+            System.out.print(json);
+        } else {
+            try {
+                Files.writeString(reportFile, json);
+            } catch (IOException e) {
+                System.err.println("Cannot write report to " + reportFile + ": " + e);
+                System.exit(1);
+            }
+        }
+    }
+
+    public static Report run(WorkloadSpec spec, OS_sim_interface os, ThreadFactory threads) throws InterruptedException {
+        int levels = spec.maxPriority() + 1;
+        LatencyHistogram[] startWaits = new LatencyHistogram[levels];
+        LatencyHistogram[] yieldWaits = new LatencyHistogram[levels];
+        LongAdder[] counts = new LongAdder[levels];
+        for (int i = 0; i < levels; i++) {
+            startWaits[i] = new LatencyHistogram();
+            yieldWaits[i] = new LatencyHistogram();
+            counts[i] = new LongAdder();
+        }
+        LatencyHistogram arrivalLag = new LatencyHistogram();
+        LongAdder burstNanos = new LongAdder();
+        LongAdder heldNanos = new LongAdder();
+        LongAdder completed = new LongAdder();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        Semaphore live = new Semaphore(spec.maxLive);
+        CountDownLatch done = new CountDownLatch(spec.processes);
+        SplittableRandom random = new SplittableRandom(spec.seed);
+
+        os.set_number_of_processors(spec.processors);
+        long begin = System.nanoTime();
+        long due = begin;
+        long lastArrival = begin;
+        for (int i = 0; i < spec.processes; i++) {
+            due = spec.arrivalRate == 0 ? System.nanoTime() : due + spec.sampleInterarrival(random);
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            live.acquire();
+            lastArrival = System.nanoTime();
+            arrivalLag.record(lastArrival - due);
+            int priority = spec.samplePriority(random);
+            SplittableRandom processRandom = random.split();
+            Runnable body = () -> {
+                try {
+                    int pid = os.reg(priority);
+                    long requested = System.nanoTime();
+                    os.start(pid);
+                    long granted = System.nanoTime();
+                    startWaits[priority].record(granted - requested);
+                    for (int burst = 0; burst < spec.bursts; burst++) {
+                        long length = spec.burstTime.sample(processRandom);
+                        spin(length);
+                        burstNanos.add(length);
+                        if (burst == spec.bursts - 1) {
+                            break;
+                        }
+                        long think = spec.thinkTime.sample(processRandom);
+                        if (think > 0) {
+                            LockSupport.parkNanos(think);
+                        }
+                        requested = System.nanoTime();
+                        heldNanos.add(requested - granted);
+                        os.schedule(pid);
+                        granted = System.nanoTime();
+                        yieldWaits[priority].record(granted - requested);
+                    }
+                    heldNanos.add(System.nanoTime() - granted);
+                    os.terminate(pid);
+                    counts[priority].increment();
+                    completed.increment();
+                } catch (Throwable t) {
+                    failures.incrementAndGet();
+                    firstFailure.compareAndSet(null, t);
+                } finally {
+                    live.release();
+                    done.countDown();
+                }
+            };
+            Thread thread = threads.newThread(body);
+            if (thread == null) {
+                throw new IllegalStateException("Thread factory refused to create a thread for process " + i);
+            }
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        if (firstFailure.get() != null) {
+            System.err.println(failures.get() + " processes failed; first failure:");
+            firstFailure.get().printStackTrace();
+        }
+
+        List<PriorityReport> priorities = new ArrayList<>();
+        for (int i = 0; i < levels; i++) {
+            if (counts[i].sum() > 0 || startWaits[i].count() > 0) {
+                priorities.add(new PriorityReport(i, counts[i].sum(), startWaits[i], yieldWaits[i]));
+            }
+        }
+        double capacity = spec.processors * (double) elapsed;
+        double arrivalRate = spec.processes * 1e9 / Math.max(1, lastArrival - begin);
+        return new Report(spec, completed.sum(), failures.get(), elapsed, arrivalRate, burstNanos.sum() / capacity,
+                heldNanos.sum() / capacity, arrivalLag, priorities);
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
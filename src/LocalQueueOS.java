@@ -0,0 +1,448 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Scheduler with one run queue per processor, as in the Linux per-CPU
+// runqueues. A waiting process joins the queue of the processor it last ran on
+// and is normally resumed there; a processor whose queue is empty steals from
+// the others before going idle. Each queue has its own lock, so dispatch never
+// goes through a structure shared by all processors.
+//
+// Priority order is global within a tolerance: a processor serves its own
+// queue unless another queue holds a process more than `priorityTolerance`
+// levels more urgent, in which case it steals that one. The other heads are
+// read from volatile summaries without locking. With tolerance 0 a process
+// never waits while a less urgent one is dispatched; Integer.MAX_VALUE makes
+// every queue independent, stealing only when it runs dry.
+public class LocalQueueOS implements OS_sim_interface {
+    private static final int FREE = -1;
+    private static final int EMPTY = Integer.MAX_VALUE;
+
+    private static final class Process {
+        final int pid;
+        final int priority;
+        volatile int processor = FREE;
+        volatile int lastProcessor = FREE;
+        volatile int queuedOn = FREE;
+        volatile Thread waiter;
+
+        Process(int pid, int priority) {
+            this.pid = pid;
+            this.priority = priority;
+        }
+    }
+
+    private static final class RunQueue {
+        final ReentrantLock lock = new ReentrantLock();
+        final ReadyQueue queue;
+        final int index;
+        // One bit per run queue, set while it holds waiters; shared by all queues
+        // but only written when one becomes empty or non-empty
+        final AtomicLongArray nonEmpty;
+        // Written under lock, read without it to pick a queue
+        volatile int size;
+        volatile int best = EMPTY;
+        // Set under lock once a resize has replaced this queue
+        boolean retired;
+
+        RunQueue(int levels, int index, AtomicLongArray nonEmpty) {
+            this.queue = new ReadyQueue(levels);
+            this.index = index;
+            this.nonEmpty = nonEmpty;
+        }
+
+        void updateSummary() {
+            boolean wasEmpty = size == 0;
+            size = queue.size();
+            int highest = queue.highestPriority();
+            best = highest == -1 ? EMPTY : highest;
+            if (wasEmpty != (highest == -1)) {
+                long bit = 1L << index;
+                int w = index >>> 6;
+                long word;
+                do {
+                    word = nonEmpty.get(w);
+                } while (!nonEmpty.compareAndSet(w, word, highest == -1 ? word & ~bit : word | bit));
+            }
+        }
+    }
+
+    private final int priorityLevels;
+    private final int priorityTolerance;
+    private final AtomicInteger nextPid = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Process> processes = new ConcurrentHashMap<>();
+    private final LongAdder affinityHits = new LongAdder();
+    private final LongAdder migrations = new LongAdder();
+    private final LongAdder steals = new LongAdder();
+    private volatile RunQueue[] runQueues;
+    private volatile AtomicLongArray nonEmptyQueues;
+    private volatile ProcessorPool processors;
+    private volatile SchedulerEventSink events = SchedulerEventSink.DISABLED;
+
+    public LocalQueueOS() {
+        this(0);
+    }
+
+    public LocalQueueOS(int priorityTolerance) {
+        this(OS.DEFAULT_PRIORITY_LEVELS, priorityTolerance);
+    }
+
+    public LocalQueueOS(int priorityLevels, int priorityTolerance) {
+        if (priorityTolerance < 0) {
+            throw new IllegalArgumentException("Negative priority tolerance: " + priorityTolerance);
+        }
+        this.priorityLevels = priorityLevels;
+        this.priorityTolerance = priorityTolerance;
+        set_number_of_processors(1);
+    }
+
+    // The sink is called concurrently from every process thread
+    public void setEventSink(SchedulerEventSink sink) {
+        events = sink == null ? SchedulerEventSink.DISABLED : sink;
+    }
+
+    // Dispatches that resumed a process on the processor it last ran on
+    public long affinityHits() {
+        return affinityHits.sum();
+    }
+
+    // Dispatches that moved a process that had run before to another processor
+    public long migrations() {
+        return migrations.sum();
+    }
+
+    // Processes taken from another processor's queue
+    public long steals() {
+        return steals.sum();
+    }
+
+    // Unlike OS, running assignments are not carried across: the resize takes
+    // every processor of the old pool first and throws IllegalStateException,
+    // changing nothing, while any process holds one. Processes that queue in
+    // the meantime move to the new run queues.
+    @Override
+    public void set_number_of_processors(int nProcessors) {
+        ProcessorPool resized = new ProcessorPool(nProcessors);
+        ProcessorPool current = processors;
+        if (current != null && !current.claimAll()) {
+            // A start() that found none free meanwhile may have queued
+            dispatchWaiters();
+            throw new IllegalStateException("Cannot resize while processes hold processors");
+        }
+        RunQueue[] queues = new RunQueue[Math.max(1, nProcessors)];
+        AtomicLongArray nonEmpty = new AtomicLongArray((queues.length + 63) >>> 6);
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new RunQueue(priorityLevels, i, nonEmpty);
+        }
+        RunQueue[] retired = runQueues;
+        nonEmptyQueues = nonEmpty;
+        runQueues = queues;
+        processors = resized;
+        if (retired != null) {
+            for (RunQueue runQueue : retired) {
+                moveWaiters(runQueue, queues);
+            }
+        }
+        dispatchWaiters();
+    }
+
+    private void moveWaiters(RunQueue from, RunQueue[] queues) {
+        from.lock.lock();
+        try {
+            from.retired = true;
+            for (int pid = from.queue.poll(); pid != -1; pid = from.queue.poll()) {
+                Process process = processes.get(pid);
+                if (process == null) {
+                    continue;
+                }
+                RunQueue to = queues[Math.min(from.index, queues.length - 1)];
+                to.lock.lock();
+                try {
+                    to.queue.offer(pid, process.priority);
+                    process.queuedOn = to.index;
+                    to.updateSummary();
+                } finally {
+                    to.lock.unlock();
+                }
+            }
+            from.updateSummary();
+        } finally {
+            from.lock.unlock();
+        }
+    }
+
+    @Override
+    public int reg(int priority) {
+        if (priority < 0 || priority >= priorityLevels) {
+            throw new IllegalArgumentException("Priority " + priority + " outside 0.." + (priorityLevels - 1));
+        }
+        int pid = nextPid.getAndIncrement();
+        processes.put(pid, new Process(pid, priority));
+        events.publish(SchedulerEvent.REGISTERED, pid, priority, -1);
+        return pid;
+    }
+
+    @Override
+    public void start(int ID) {
+        Process process = processes.get(ID);
+        process.waiter = Thread.currentThread();
+        int preferred = process.lastProcessor;
+        ProcessorPool pool = processors;
+        if (preferred != FREE && preferred < pool.size() && pool.claim(preferred)) {
+            run(process, preferred);
+            return;
+        }
+        int processor = pool.claim();
+        if (processor != FREE) {
+            run(process, processor);
+            return;
+        }
+        enqueue(process, preferred != FREE ? preferred : lessLoadedQueue(runQueues));
+        kickIdleProcessor();
+        awaitAssignment(process);
+    }
+
+    @Override
+    public void schedule(int ID) {
+        Process process = processes.get(ID);
+        int processor = process.processor;
+        if (processor == FREE) {
+            start(ID);
+            return;
+        }
+        // Only yield to a waiter of equal or higher priority; otherwise keep running
+        Process next = pickNext(processor, process.priority);
+        if (next == null) {
+            return;
+        }
+        process.waiter = Thread.currentThread();
+        process.processor = FREE;
+        events.publish(SchedulerEvent.FREED, ID, process.priority, processor);
+        enqueue(process, processor);
+        grant(processor, next);
+        awaitAssignment(process);
+    }
+
+    @Override
+    public void terminate(int ID) {
+        Process process = processes.remove(ID);
+        if (process == null) {
+            return;
+        }
+        events.publish(SchedulerEvent.TERMINATED, ID, process.priority, -1);
+        int queuedOn = process.queuedOn;
+        RunQueue[] queues = runQueues;
+        // Past the end only if a resize moved it; pollQueue() skips it there
+        if (queuedOn != FREE && queuedOn < queues.length) {
+            RunQueue runQueue = queues[queuedOn];
+            runQueue.lock.lock();
+            try {
+                if (runQueue.queue.remove(ID, process.priority)) {
+                    process.queuedOn = FREE;
+                    runQueue.updateSummary();
+                }
+            } finally {
+                runQueue.lock.unlock();
+            }
+        }
+        int processor = process.processor;
+        if (processor != FREE) {
+            process.processor = FREE;
+            events.publish(SchedulerEvent.FREED, ID, process.priority, processor);
+            dispatch(processor);
+        }
+    }
+
+    private void run(Process process, int processor) {
+        recordPlacement(process, processor);
+        process.processor = processor;
+        events.publish(SchedulerEvent.ALLOCATED, process.pid, process.priority, processor);
+    }
+
+    // Hands a processor the caller owns to a dequeued waiter
+    private void grant(int processor, Process next) {
+        run(next, processor);
+        LockSupport.unpark(next.waiter);
+        events.publish(SchedulerEvent.SIGNALED, next.pid, next.priority, processor);
+    }
+
+    private void recordPlacement(Process process, int processor) {
+        int last = process.lastProcessor;
+        if (last == processor) {
+            affinityHits.increment();
+        } else if (last != FREE) {
+            migrations.increment();
+        }
+        process.lastProcessor = processor;
+    }
+
+    private void enqueue(Process process, int queueIndex) {
+        boolean queued = false;
+        while (!queued) {
+            RunQueue[] queues = runQueues;
+            RunQueue runQueue = queues[queueIndex < queues.length ? queueIndex : lessLoadedQueue(queues)];
+            runQueue.lock.lock();
+            try {
+                // A resize retired the queue after we read it: try the new ones
+                if (!runQueue.retired) {
+                    runQueue.queue.offer(process.pid, process.priority);
+                    process.queuedOn = runQueue.index;
+                    runQueue.updateSummary();
+                    queued = true;
+                }
+            } finally {
+                runQueue.lock.unlock();
+            }
+        }
+        events.publish(SchedulerEvent.ENQUEUED, process.pid, process.priority, -1);
+    }
+
+    // Power of two choices: the shorter of two random queues
+    private int lessLoadedQueue(RunQueue[] queues) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(queues.length);
+        int b = random.nextInt(queues.length);
+        return queues[a].size <= queues[b].size ? a : b;
+    }
+
+    // An enqueuer that found no free processor may race with one going idle;
+    // either it sees the idle processor here or the idle one sees its process
+    // in dispatch(), so nothing is stranded
+    private void kickIdleProcessor() {
+        ProcessorPool pool = processors;
+        if (pool.anyFree()) {
+            int processor = pool.claim();
+            if (processor != FREE) {
+                dispatch(processor);
+            }
+        }
+    }
+
+    // Hands free processors to waiters until one side runs out
+    private void dispatchWaiters() {
+        ProcessorPool pool = processors;
+        int processor;
+        while (anyWaiting() && (processor = pool.claim()) != FREE) {
+            dispatch(processor);
+        }
+    }
+
+    // Gives a processor the caller owns to the next waiter, or marks it free
+    private void dispatch(int processor) {
+        ProcessorPool pool = processors;
+        if (processor >= pool.size()) {
+            return;
+        }
+        while (true) {
+            Process next = pickNext(processor, Integer.MAX_VALUE);
+            if (next != null) {
+                grant(processor, next);
+                return;
+            }
+            pool.release(processor);
+            if (!anyWaiting() || !pool.claim(processor)) {
+                return;
+            }
+        }
+    }
+
+    // Removes the waiter `processor` should run next, no less urgent than
+    // maxPriority: from its own queue unless another queue's head beats it by
+    // more than the tolerance or its own queue has nothing eligible
+    private Process pickNext(int processor, int maxPriority) {
+        RunQueue[] queues = runQueues;
+        int local = processor < queues.length ? processor : 0;
+        while (true) {
+            int localBest = queues[local].best;
+            int victim = -1;
+            int victimBest = EMPTY;
+            if (priorityTolerance != Integer.MAX_VALUE || localBest > maxPriority) {
+                // Visit only non-empty queues; ties go to the nearest after our own
+                AtomicLongArray nonEmpty = nonEmptyQueues;
+                int victimDistance = Integer.MAX_VALUE;
+                for (int w = 0; w < nonEmpty.length(); w++) {
+                    for (long word = nonEmpty.get(w); word != 0; word &= word - 1) {
+                        int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                        if (index == local || index >= queues.length) {
+                            continue;
+                        }
+                        int best = queues[index].best;
+                        int distance = Math.floorMod(index - local, queues.length);
+                        if (best < victimBest || (best == victimBest && distance < victimDistance)) {
+                            victim = index;
+                            victimBest = best;
+                            victimDistance = distance;
+                        }
+                    }
+                }
+            }
+            int from;
+            if (localBest != EMPTY && localBest <= maxPriority
+                    && (victimBest == EMPTY || (long) localBest - priorityTolerance <= victimBest)) {
+                from = local;
+            } else if (victimBest != EMPTY && victimBest <= maxPriority) {
+                from = victim;
+            } else {
+                return null;
+            }
+            Process next = pollQueue(from, maxPriority);
+            if (next != null) {
+                if (from != local) {
+                    steals.increment();
+                }
+                return next;
+            }
+            // The head moved under us; look again unless everything is empty
+            if (!anyWaiting()) {
+                return null;
+            }
+        }
+    }
+
+    private Process pollQueue(int index, int maxPriority) {
+        RunQueue runQueue = runQueues[index];
+        runQueue.lock.lock();
+        try {
+            while (true) {
+                int priority = runQueue.queue.highestPriority();
+                if (priority == -1 || priority > maxPriority) {
+                    return null;
+                }
+                int pid = runQueue.queue.poll(priority);
+                runQueue.updateSummary();
+                // Null if terminate() got here first and is waiting for this lock
+                Process process = processes.get(pid);
+                if (process != null) {
+                    process.queuedOn = FREE;
+                    return process;
+                }
+            }
+        } finally {
+            runQueue.lock.unlock();
+        }
+    }
+
+    private boolean anyWaiting() {
+        AtomicLongArray nonEmpty = nonEmptyQueues;
+        for (int w = 0; w < nonEmpty.length(); w++) {
+            if (nonEmpty.get(w) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void awaitAssignment(Process process) {
+        while (process.processor == FREE) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
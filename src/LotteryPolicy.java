@@ -0,0 +1,87 @@
+import java.util.SplittableRandom;
+
+// Lottery scheduling. Every waiting process holds tickets according to its
+// priority (levels - priority, so level 0 holds the most) and each dispatch
+// draws one ticket at random, giving CPU shares proportional to tickets in
+// expectation without starving anyone. Processes of one level hold equally many
+// tickets, so the draw picks a level weighted by its total and serves that level
+// FIFO: O(levels) per draw rather than O(processes). A yielding process takes
+// part in the draw and may win its processor back.
+public class LotteryPolicy implements SchedulingPolicy {
+    private final ReadyQueue readyQueue;
+    private final SplittableRandom random;
+    private long totalTickets;
+
+    public LotteryPolicy(int priorityLevels) {
+        this(priorityLevels, System.nanoTime());
+    }
+
+    // A fixed seed makes the sequence of draws reproducible
+    public LotteryPolicy(int priorityLevels, long seed) {
+        readyQueue = new ReadyQueue(priorityLevels);
+        random = new SplittableRandom(seed);
+    }
+
+    public long tickets(int priority) {
+        return readyQueue.levels() - priority;
+    }
+
+    @Override
+    public int levels() {
+        return readyQueue.levels();
+    }
+
+    @Override
+    public int size() {
+        return readyQueue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return readyQueue.isEmpty();
+    }
+
+    @Override
+    public void enqueue(int pid, int slot, int priority, long now) {
+        readyQueue.offer(pid, priority);
+        totalTickets += tickets(priority);
+    }
+
+    @Override
+    public int poll(long now) {
+        if (readyQueue.isEmpty()) {
+            return -1;
+        }
+        long winner = random.nextLong(totalTickets);
+        int priority = readyQueue.highestPriority();
+        for (int level = priority; level < readyQueue.levels(); level++) {
+            long held = readyQueue.size(level) * tickets(level);
+            if (winner < held) {
+                priority = level;
+                break;
+            }
+            winner -= held;
+        }
+        totalTickets -= tickets(priority);
+        return readyQueue.poll(priority);
+    }
+
+    @Override
+    public boolean remove(int pid, int slot, int priority) {
+        if (!readyQueue.remove(pid, priority)) {
+            return false;
+        }
+        totalTickets -= tickets(priority);
+        return true;
+    }
+
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        return !readyQueue.isEmpty();
+    }
+
+    @Override
+    public boolean usesClock() {
+        return false;
+    }
+}
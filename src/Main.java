@@ -1,7 +1,17 @@
 
 public class Main {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
+		//java Main load [key=value ...] runs a synthetic workload instead (see LoadTest)
+		if (args.length > 0 && args[0].equals("load")) {
+			LoadTest.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		//java Main conformance [class ...] runs the parallel conformance harness (see Conformance)
+		if (args.length > 0 && args[0].equals("conformance")) {
+			Conformance.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		//Used to provide selected testing (you should adapt this to your own tests)
 			Tests exampleTests =  new Tests();
 			exampleTests.ur1_example_test();
@@ -12,6 +22,48 @@ public class Main {
 			exampleTests.ur6_example_test();
 			exampleTests.ur6_example_test2();
 			
+			//Same scenarios against the lock-free dispatcher
+			exampleTests.ur2_example_test(new ConcurrentOS());
+			exampleTests.ur3_example_test(new ConcurrentOS());
+			exampleTests.ur4_example_test(new ConcurrentOS());
+			exampleTests.ur5_example_test(new ConcurrentOS());
+			exampleTests.ur6_example_test(new ConcurrentOS());
+			exampleTests.ur6_example_test2(new ConcurrentOS(true));
+			
+			//And against per-processor run queues with work stealing
+			exampleTests.ur2_example_test(new LocalQueueOS());
+			exampleTests.ur3_example_test(new LocalQueueOS());
+			exampleTests.ur4_example_test(new LocalQueueOS());
+			exampleTests.ur5_example_test(new LocalQueueOS());
+			exampleTests.ur6_example_test(new LocalQueueOS());
+			exampleTests.ur6_example_test2(new LocalQueueOS());
+			exampleTests.process_runtime_example_test();
+			exampleTests.batch_start_example_test();
+			exampleTests.async_example_test();
+			exampleTests.discrete_event_example_test();
+			exampleTests.policy_example_test();
+			exampleTests.aging_example_test();
+			exampleTests.trace_example_test();
+			exampleTests.snapshot_example_test();
+			exampleTests.hot_resize_example_test();
+			exampleTests.time_slice_example_test();
+			exampleTests.load_test_example_test();
+			exampleTests.sharded_example_test();
+			exampleTests.admission_example_test();
+			exampleTests.jfr_example_test();
+			exampleTests.conformance_example_test();
+			exampleTests.processor_pool_example_test();
+			exampleTests.ready_queue_example_test();
+			exampleTests.process_table_example_test();
+			exampleTests.async_event_sink_example_test();
+			exampleTests.wait_strategy_example_test();
+			exampleTests.metrics_example_test();
+			exampleTests.discrete_event_vs_os_example_test();
+			exampleTests.local_queue_example_test();
+			exampleTests.concurrent_interrupt_example_test();
+			exampleTests.terminate_waiting_example_test();
+			exampleTests.resize_refused_example_test();
+			
 		}
 
 	}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+// Multilevel feedback queue. A process starts in the queue matching its
+// priority and drops one queue each time it has used up that queue's time
+// allotment, so CPU-bound processes sink while processes that yield early stay
+// up. Allotments double per queue. Every boost interval all waiting processes
+// go back to their starting queue, which keeps the low queues from starving;
+// running processes are reset lazily through an epoch instead of being visited.
+public class MlfqPolicy implements SchedulingPolicy {
+    public static final int DEFAULT_QUEUES = 8;
+    public static final long DEFAULT_QUANTUM_NANOS = 1_000_000;
+    public static final long DEFAULT_BOOST_NANOS = 100_000_000;
+    private static final long IDLE = Long.MIN_VALUE;
+
+    private final int priorityLevels;
+    private final int queues;
+    private final long quantumNanos;
+    private final long boostNanos;
+    // Holds slots rather than PIDs so a boost can find each process's priority
+    private final ReadyQueue readyQueue;
+
+    // Per slot
+    private int[] pids = new int[16];
+    private int[] priorities = new int[16];
+    private int[] levels = new int[16];
+    private long[] used = new long[16];
+    private long[] dispatchedAt = new long[16];
+    private int[] epochs = new int[16];
+
+    private int epoch = 1;
+    private long lastBoost;
+
+    public MlfqPolicy(int priorityLevels) {
+        this(priorityLevels, DEFAULT_QUEUES, DEFAULT_QUANTUM_NANOS, DEFAULT_BOOST_NANOS);
+    }
+
+    public MlfqPolicy(int priorityLevels, int queues, long quantumNanos, long boostNanos) {
+        if (priorityLevels <= 0 || queues <= 0 || queues > 62 || quantumNanos <= 0 || boostNanos <= 0) {
+            throw new IllegalArgumentException("Invalid MLFQ configuration");
+        }
+        this.priorityLevels = priorityLevels;
+        this.queues = queues;
+        this.quantumNanos = quantumNanos;
+        this.boostNanos = boostNanos;
+        this.readyQueue = new ReadyQueue(queues);
+    }
+
+    @Override
+    public int levels() {
+        return priorityLevels;
+    }
+
+    @Override
+    public int size() {
+        return readyQueue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return readyQueue.isEmpty();
+    }
+
+    @Override
+    public void enqueue(int pid, int slot, int priority, long now) {
+        track(pid, slot, priority);
+        boostIfDue(now);
+        readyQueue.offer(slot, level(slot));
+    }
+
+    @Override
+    public int poll(long now) {
+        boostIfDue(now);
+        int slot = readyQueue.poll();
+        return slot == -1 ? -1 : pids[slot];
+    }
+
+    @Override
+    public boolean remove(int pid, int slot, int priority) {
+        return slot < levels.length && readyQueue.remove(slot, level(slot));
+    }
+
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        track(pid, slot, priority);
+        boostIfDue(now);
+        int next = readyQueue.highestPriority();
+        if (next == -1) {
+            return false;
+        }
+        int level = level(slot);
+        if (dispatchedAt[slot] != IDLE && used[slot] + now - dispatchedAt[slot] >= allotment(level)) {
+            level = Math.min(queues - 1, level + 1);
+        }
+        return next <= level;
+    }
+
+    @Override
+    public void onDispatched(int pid, int slot, int priority, long now) {
+        track(pid, slot, priority);
+        dispatchedAt[slot] = now;
+    }
+
+    @Override
+    public void onDescheduled(int pid, int slot, int priority, long now) {
+        track(pid, slot, priority);
+        int level = level(slot);
+        long total = used[slot] + now - dispatchedAt[slot];
+        if (total >= allotment(level) && level < queues - 1) {
+            levels[slot] = level + 1;
+            total = 0;
+        }
+        used[slot] = total;
+        dispatchedAt[slot] = IDLE;
+    }
+
+    @Override
+    public void onTerminated(int pid, int slot) {
+        if (slot < epochs.length) {
+            epochs[slot] = 0;
+        }
+    }
+
+    private long allotment(int level) {
+        return quantumNanos << level;
+    }
+
+    private int level(int slot) {
+        if (epochs[slot] != epoch) {
+            epochs[slot] = epoch;
+            levels[slot] = (int) ((long) priorities[slot] * queues / priorityLevels);
+            used[slot] = 0;
+        }
+        return levels[slot];
+    }
+
+    private void track(int pid, int slot, int priority) {
+        if (slot >= pids.length) {
+            int length = Math.max(slot + 1, pids.length * 2);
+            pids = Arrays.copyOf(pids, length);
+            priorities = Arrays.copyOf(priorities, length);
+            levels = Arrays.copyOf(levels, length);
+            used = Arrays.copyOf(used, length);
+            dispatchedAt = Arrays.copyOf(dispatchedAt, length);
+            epochs = Arrays.copyOf(epochs, length);
+        }
+        if (epochs[slot] == 0) {
+            pids[slot] = pid;
+            priorities[slot] = priority;
+            dispatchedAt[slot] = IDLE;
+            level(slot);
+        }
+    }
+
+    // Starts a new epoch and moves every waiting process back to its starting
+    // queue, keeping the relative order of processes that land in the same one.
+    // Linear in the number waiting, once per boost interval.
+    private void boostIfDue(long now) {
+        if (now - lastBoost < boostNanos) {
+            return;
+        }
+        lastBoost = now;
+        int n = readyQueue.size();
+        int[] waiting = new int[n];
+        for (int i = 0; i < n; i++) {
+            waiting[i] = readyQueue.poll();
+        }
+        epoch = epoch == Integer.MAX_VALUE ? 1 : epoch + 1;
+        for (int slot : waiting) {
+            readyQueue.offer(slot, level(slot));
+        }
+    }
+}
@@ -1,109 +1,850 @@
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class OS implements OS_sim_interface {
-    private int nextPid = 0;
+public class OS implements SchedulerShard, OS_async_interface {
+    // Priority 0 is the most urgent; the default covers the Linux range 0-139
+    public static final int DEFAULT_PRIORITY_LEVELS = 140;
+
+    // Spin budgets for SPINNING (fixed) and the bounds ADAPTIVE tunes within
+    private static final long INITIAL_SPIN_NANOS = 20_000;
+    private static final long MIN_SPIN_NANOS = 1_000;
+    private static final long MAX_SPIN_NANOS = 200_000;
+    private static final boolean MULTICORE = Runtime.getRuntime().availableProcessors() > 1;
+
     private final ReentrantLock lock = new ReentrantLock(true);
-    private final ArrayList<Queue<Integer>> processQueues = new ArrayList<>();
-    private final ArrayList<Condition> waitConditions = new ArrayList<>();
-    private final ArrayList<Boolean> processorAvailability = new ArrayList<>();
-    private final ArrayList<Integer> processAssignment = new ArrayList<>();
-    private final ArrayList<Integer> processPriorities = new ArrayList<>();
+    private SchedulingPolicy policy;
+    private boolean policyClock;
+    private final ProcessTable processTable;
+    // Indexed by process table slot and reused when the slot is recycled
+    private Waiter[] waiters = new Waiter[16];
+    // Futures of processes waiting through startAsync/yieldAsync, by slot
+    private CompletableFuture<?>[] pendingStarts = new CompletableFuture<?>[16];
+    private Executor asyncExecutor = ForkJoinPool.commonPool();
+    private ProcessorPool processors = new ProcessorPool(1);
+    private SchedulerEventSink events = SchedulerEventSink.DISABLED;
+    private final SchedulerJfr jfr = new SchedulerJfr();
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private boolean spinOnSingleCpu;
+    private SchedulerMetrics metrics;
+    private long spinBudgetNanos = INITIAL_SPIN_NANOS;
+    // Time slicing: a quantum timer per running process, null when off
+    private volatile TimingWheel timeSlices;
+    private long[] quantumNanos;
+    // PID each slot's slice was last armed for, read by preemptionPending()
+    private volatile AtomicIntegerArray sliceOwners = new AtomicIntegerArray(16);
+    // Admission control: ready-queue limits (unbounded by default) and what
+    // to do when they are reached
+    private int queueCapacity = Integer.MAX_VALUE;
+    private int[] priorityCapacities;
+    private int[] queuedByPriority;
+    private ShedPolicy shedPolicy = ShedPolicy.REJECT_NEWEST;
+    private AdmissionListener admissionListener = AdmissionListener.NONE;
+
+    // A waiting process parks on its condition; spinners poll granted instead,
+    // which wakeProcess sets without them holding the lock
+    private static final class Waiter {
+        final Condition condition;
+        volatile boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
 
     public OS() {
-        initializeReadyQueue();
+        this(DEFAULT_PRIORITY_LEVELS);
+    }
+
+    public OS(int priorityLevels) {
+        this(priorityLevels, new ProcessTable());
+    }
+
+    private OS(int priorityLevels, ProcessTable processTable) {
+        this.processTable = processTable;
+        policy = new PriorityPolicy(priorityLevels);
+        queuedByPriority = new int[priorityLevels];
+    }
+
+    // Copies the process table and queue order under the lock; the copy is
+    // column-wise, so dispatch pauses for a few arraycopies however the
+    // snapshot is written afterwards. Needs a policy with queuedInOrder().
+    public SchedulerSnapshot snapshot() {
+        lock.lock();
+        try {
+            return new SchedulerSnapshot(policy.levels(), processors.size(), processTable.copy(), policy.queuedInOrder());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void checkpoint(Path file) throws IOException {
+        snapshot().write(file);
+    }
+
+    public static OS restore(Path file) throws IOException {
+        return restore(SchedulerSnapshot.read(file));
+    }
+
+    // A scheduler in the snapshot's state, with the default policy and no event
+    // sink, metrics or waiting threads. Running processes keep their processors
+    // and queued ones are re-queued in their original order.
+    public static OS restore(SchedulerSnapshot snapshot) {
+        ProcessTable table = snapshot.processTable().copy();
+        OS os = new OS(snapshot.levels(), table);
+        os.processors = new ProcessorPool(snapshot.processors());
+        for (int slot = 0; slot < table.slotLimit(); slot++) {
+            int processor = table.processorAt(slot);
+            if (processor != -1 && (processor >= snapshot.processors() || !os.processors.claim(processor))) {
+                throw new IllegalArgumentException("Corrupt snapshot: processor " + processor + " assigned twice or out of range");
+            }
+        }
+        for (int ID : snapshot.queue()) {
+            if (table.state(ID) != ProcessTable.READY) {
+                throw new IllegalArgumentException("Corrupt snapshot: queued process " + ID + " is not ready");
+            }
+            // As any enqueue, so per-level counts and admission see them
+            os.enqueue(ID, table.slot(ID), table.priority(ID), 0);
+            os.markQueued(ID, table.slot(ID), table.priority(ID));
+        }
+        return os;
     }
 
-    private void initializeReadyQueue() {
-        processorAvailability.add(true);
-        for (int i = 0; i < 10; i++) {
-            processQueues.add(new LinkedList<>());
+    // Replaces the default strict-priority policy. Priorities passed to reg()
+    // are then checked against the policy's levels. Only allowed while no
+    // process is waiting, and before enableMetrics() if the levels differ.
+    // Processes already running are reported to the new policy as dispatched
+    // now, so it accounts their runs from the switch on.
+    public void setSchedulingPolicy(SchedulingPolicy newPolicy) {
+        lock.lock();
+        try {
+            if (!policy.isEmpty()) {
+                throw new IllegalStateException("Cannot change policy with " + policy.size() + " processes waiting");
+            }
+            for (int slot = 0; slot < processTable.slotLimit(); slot++) {
+                int ID = processTable.pidAt(slot);
+                if (processTable.isLive(ID) && processTable.priority(ID) >= newPolicy.levels()) {
+                    throw new IllegalStateException("Process " + ID + " has priority " + processTable.priority(ID)
+                            + ", outside the new policy's " + newPolicy.levels() + " levels");
+                }
+            }
+            if ((metrics != null || timeSlices != null || priorityCapacities != null) && newPolicy.levels() != policy.levels()) {
+                throw new IllegalStateException(
+                        "Set a policy with different levels before enabling metrics, time slicing or priority capacities");
+            }
+            if (shedPolicy == ShedPolicy.DROP_LOWEST_PRIORITY) {
+                checkCanShed(newPolicy);
+            }
+            policy = newPolicy;
+            policyClock = newPolicy.usesClock();
+            queuedByPriority = new int[newPolicy.levels()];
+            long now = now();
+            for (int slot = 0; slot < processTable.slotLimit(); slot++) {
+                if (processTable.processorAt(slot) != -1) {
+                    int ID = processTable.pidAt(slot);
+                    newPolicy.onDispatched(ID, slot, processTable.priority(ID), now);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    // Scheduling transitions are published here instead of printed; use
+    // AsyncEventSink.console() for the old console trace
+    public void setEventSink(SchedulerEventSink sink) {
+        lock.lock();
+        try {
+            events = sink == null ? SchedulerEventSink.DISABLED : sink;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Futures from startAsync/yieldAsync are completed on this executor, so
+    // their callbacks never run while the scheduler lock is held
+    public void setAsyncExecutor(Executor executor) {
+        lock.lock();
+        try {
+            asyncExecutor = executor;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Spinning only pays off on a multicore host; with one CPU every strategy blocks
+    public void setWaitStrategy(WaitStrategy strategy) {
+        lock.lock();
+        try {
+            waitStrategy = strategy;
+            spinBudgetNanos = INITIAL_SPIN_NANOS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // For tests: spin with SPINNING and ADAPTIVE even on a single-CPU host,
+    // so the spin path runs wherever the tests do
+    void setSpinOnSingleCpu(boolean spin) {
+        lock.lock();
+        try {
+            spinOnSingleCpu = spin;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Current spin budget: fixed for SPINNING, tuned by ADAPTIVE
+    long spinBudgetNanos() {
+        lock.lock();
+        try {
+            return spinBudgetNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Bounds the ready queue. A process that would queue beyond the limit is
+    // handled by the shed policy: refused, or let in by shedding a less urgent
+    // waiter. A refused start() throws RejectedExecutionException, tryStart()
+    // returns false and startAsync() fails; the process stays registered and
+    // may try again or terminate. Processes that go straight to a free
+    // processor, and running processes re-queued by schedule() or a resize,
+    // are never refused.
+    public void setQueueCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative: " + capacity);
+        }
+        lock.lock();
+        try {
+            queueCapacity = capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Per-level limits on top of the overall one, indexed by priority; null
+    // removes them. A full level always refuses the newcomer.
+    public void setQueueCapacity(int[] capacityByPriority) {
+        if (capacityByPriority != null) {
+            if (capacityByPriority.length != policy.levels()) {
+                throw new IllegalArgumentException("Need a capacity for each of " + policy.levels() + " priority levels");
+            }
+            for (int capacity : capacityByPriority) {
+                if (capacity < 0) {
+                    throw new IllegalArgumentException("Queue capacity must not be negative: " + capacity);
+                }
+            }
+        }
+        lock.lock();
+        try {
+            priorityCapacities = capacityByPriority == null ? null : capacityByPriority.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // DROP_LOWEST_PRIORITY needs a policy that can name its last process
+    // (SchedulingPolicy.last()), as the default PriorityPolicy can
+    public void setShedPolicy(ShedPolicy shedPolicy) {
+        lock.lock();
+        try {
+            if (shedPolicy == ShedPolicy.DROP_LOWEST_PRIORITY) {
+                checkCanShed(policy);
+            }
+            this.shedPolicy = shedPolicy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkCanShed(SchedulingPolicy policy) {
+        try {
+            policy.last();
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException(ShedPolicy.DROP_LOWEST_PRIORITY + " needs a policy that can name its last queued process; "
+                    + policy.getClass().getSimpleName() + " cannot", e);
+        }
+    }
+
+    public void setAdmissionListener(AdmissionListener listener) {
+        lock.lock();
+        try {
+            admissionListener = listener == null ? AdmissionListener.NONE : listener;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives every process a time slice of quantumNanos[priority] from each
+    // allocation. A process whose slice has run out yields at its next
+    // schedule() even if the policy would let it keep the processor: it is
+    // queued behind its peers and gets a fresh slice if picked again. Code
+    // that never calls schedule() can poll preemptionPending(ID) for that
+    // moment. Timers live on a hashed wheel ticking at a quarter of the
+    // shortest quantum (between 100us and 10ms).
+    public void enableTimeSlicing(long[] quantumNanos) {
+        if (quantumNanos.length != policy.levels()) {
+            throw new IllegalArgumentException("Need a quantum for each of " + policy.levels() + " priority levels");
+        }
+        long shortest = Long.MAX_VALUE;
+        for (long quantum : quantumNanos) {
+            if (quantum <= 0) {
+                throw new IllegalArgumentException("Quantum must be positive: " + quantum);
+            }
+            shortest = Math.min(shortest, quantum);
+        }
+        lock.lock();
+        try {
+            disableTimeSlicing();
+            this.quantumNanos = quantumNanos.clone();
+            timeSlices = new TimingWheel(Math.min(10_000_000, Math.max(100_000, shortest / 4)), 512);
+            for (int slot = 0; slot < processTable.slotLimit(); slot++) {
+                if (processTable.processorAt(slot) != -1) {
+                    startSlice(slot, processTable.priority(processTable.pidAt(slot)));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enableTimeSlicing(long quantumNanos) {
+        long[] quanta = new long[policy.levels()];
+        Arrays.fill(quanta, quantumNanos);
+        enableTimeSlicing(quanta);
+    }
+
+    public void disableTimeSlicing() {
+        lock.lock();
+        try {
+            if (timeSlices != null) {
+                timeSlices.close();
+                timeSlices = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether the process has used up its time slice and should call
+    // schedule(). Lock-free, so cheap enough to poll from a busy loop.
+    public boolean preemptionPending(int ID) {
+        TimingWheel wheel = timeSlices;
+        int slot = ProcessTable.slotOf(ID);
+        if (wheel == null || !wheel.expired(slot)) {
+            return false;
+        }
+        // The owner is set before the slice is armed, so it is current once
+        // the expiry is seen; a stale PID sharing the slot does not match
+        AtomicIntegerArray owners = sliceOwners;
+        return slot < owners.length() && owners.get(slot) == ID;
+    }
+
+    private void startSlice(int slot, int priority) {
+        if (timeSlices != null) {
+            AtomicIntegerArray owners = sliceOwners;
+            if (slot >= owners.length()) {
+                AtomicIntegerArray grown = new AtomicIntegerArray(Math.max(slot + 1, owners.length() * 2));
+                for (int i = 0; i < owners.length(); i++) {
+                    grown.set(i, owners.get(i));
+                }
+                sliceOwners = owners = grown;
+            }
+            owners.set(slot, processTable.pidAt(slot));
+            timeSlices.arm(slot, quantumNanos[priority]);
+        }
+    }
+
+    private void endSlice(int slot) {
+        if (timeSlices != null) {
+            timeSlices.cancel(slot);
+        }
+    }
+
+    // Starts recording wait/run times, queue depths, utilisation and counters.
+    // Off by default; the hooks then cost one null check each.
+    public SchedulerMetrics enableMetrics() {
+        lock.lock();
+        try {
+            metrics = new SchedulerMetrics(policy.levels());
+            metrics.onProcessorsChanged(processors.size());
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The metrics being recorded, or null if enableMetrics() was not called
+    public SchedulerMetrics metrics() {
+        return metrics;
+    }
+
+    // Resizes the processor set live. Running processes keep their processor
+    // if it survives; those on removed processors move to a free surviving one
+    // (most urgent first) or, if none is free, are preempted: they go back on
+    // the queue and their thread waits at its next schedule() call. Waiters
+    // are then granted any free processors in the same critical section.
     @Override
     public void set_number_of_processors(int nProcessors) {
-        lock.lock();
+        lockScheduler();
         try {
-            processorAvailability.clear();
-            for (int i = 0; i < nProcessors; i++) {
-                processorAvailability.add(true);
+            ProcessorPool resized = new ProcessorPool(nProcessors);
+            int[] displaced = new int[0];
+            int displacedCount = 0;
+            for (int slot = 0; slot < processTable.slotLimit(); slot++) {
+                int processor = processTable.processorAt(slot);
+                if (processor == -1) {
+                    continue;
+                }
+                if (processor < nProcessors) {
+                    resized.claim(processor);
+                } else {
+                    if (displacedCount == displaced.length) {
+                        displaced = Arrays.copyOf(displaced, Math.max(8, displacedCount * 2));
+                    }
+                    displaced[displacedCount++] = processTable.pidAt(slot);
+                }
+            }
+            processors = resized;
+            if (metrics != null) {
+                metrics.onProcessorsChanged(nProcessors);
+            }
+            if (displacedCount > 0) {
+                relocate(Arrays.copyOf(displaced, displacedCount));
+            }
+            while (isProcessorAvailable() && !policy.isEmpty()) {
+                signalProcess();
             }
         } finally {
             lock.unlock();
         }
     }
 
+    // Moves processes off removed processors, most urgent first
+    private void relocate(int[] displaced) {
+        long[] order = new long[displaced.length];
+        for (int i = 0; i < displaced.length; i++) {
+            order[i] = (long) processTable.priority(displaced[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+        long now = now();
+        for (long entry : order) {
+            int ID = displaced[(int) entry];
+            int slot = processTable.slot(ID);
+            int priority = processTable.priority(ID);
+            int from = processTable.processor(ID);
+            int to = processors.claim();
+            processTable.setProcessor(ID, to);
+            if (to == -1) {
+                jfr.preempted(ID, priority, from, "resize");
+            }
+            events.publish(SchedulerEvent.FREED, ID, priority, from);
+            jfr.released(ID, priority, from);
+            if (metrics != null) {
+                metrics.onReleased(slot, priority, from);
+            }
+            if (to != -1) {
+                events.publish(SchedulerEvent.ALLOCATED, ID, priority, to);
+                jfr.allocated(ID, slot, priority, to);
+                if (metrics != null) {
+                    metrics.onGranted(slot, priority, to);
+                }
+            } else {
+                endSlice(slot);
+                policy.onDescheduled(ID, slot, priority, now);
+                enqueue(ID, slot, priority, now);
+                markQueued(ID, slot, priority);
+            }
+        }
+    }
+
     @Override
     public int reg(int priority) {
-        lock.lock();
+        checkPriority(priority);
+        lockScheduler();
         try {
-            waitConditions.add(lock.newCondition());
-            processPriorities.add(priority);
-            processAssignment.add(-1);
-            // return nextPid++;
+            int ID = processTable.register(priority);
+            events.publish(SchedulerEvent.REGISTERED, ID, priority, -1);
+            jfr.registered(ID, priority);
+            return ID;
         } finally {
             lock.unlock();
         }
-        // System.out.println("Registered process " + ID + " with priority " + priority);
-        return nextPid++;
+    }
+
+    // Registers one process per entry in a single critical section and returns
+    // the first PID; the others follow consecutively
+    public int regBatch(int[] priorities) {
+        for (int priority : priorities) {
+            checkPriority(priority);
+        }
+        lockScheduler();
+        try {
+            int first = processTable.registerRange(priorities);
+            if (first + priorities.length > waiters.length) {
+                waiters = Arrays.copyOf(waiters, first + priorities.length);
+            }
+            for (int i = 0; i < priorities.length; i++) {
+                events.publish(SchedulerEvent.REGISTERED, first + i, priorities[i], -1);
+                jfr.registered(first + i, priorities[i]);
+            }
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the scheduler lock from a public entry point, counting acquisitions
+    // that find it held by another thread when metrics are on
+    private void lockScheduler() {
+        if (metrics != null && lock.isLocked() && !lock.isHeldByCurrentThread()) {
+            metrics.onLockContended();
+        }
+        lock.lock();
+    }
+
+    private void checkPriority(int priority) {
+        if (priority < 0 || priority >= policy.levels()) {
+            throw new IllegalArgumentException("Priority " + priority + " outside 0.." + (policy.levels() - 1));
+        }
     }
 
     @Override
     public void start(int ID) {
-        lock.lock();
+        lockScheduler();
         try {
-            // Check if there are available processors
-            if (isProcessorAvailable()) {
-                if (!assignProcessor(ID)) {
-                    System.out.println("Failed to assign processor for process " + ID + ", enqueuing...");
-                    awaitAssignment(ID);
-                }
-            } else {
-                // If no processors are available, enqueue the process
-                System.out.println("No available processors, enqueuing process " + ID);
-                addingProcessToQueue(ID);
-                awaitAssignment(ID);
+            if (!startWithin(ID, Long.MAX_VALUE)) {
+                throw rejected(ID);
             }
         } finally {
             lock.unlock();
         }
     }
-    
-    // Helper method to check if there are available processors
-    private boolean isProcessorAvailable() {
-        for (boolean status : processorAvailability) {
-            if (status) {
+
+    // start() that gives up after the timeout. Returns false, leaving the
+    // process registered but off the queue, if admission control refused or
+    // shed it or the timeout ran out before a processor was granted; true
+    // once it holds one.
+    public boolean tryStart(int ID, long timeout, TimeUnit unit) {
+        lockScheduler();
+        try {
+            return startWithin(ID, unit.toNanos(timeout)) && processTable.processor(ID) != -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // False if the process was turned away or timed out
+    private boolean startWithin(int ID, long timeoutNanos) {
+        if (processTable.state(ID) == ProcessTable.IDLE) {
+            if (isProcessorAvailable() && assignProcessor(ID)) {
+                return true;
+            }
+            // If no processors are available, enqueue the process
+            if (!admit(ID, 0)) {
+                return false;
+            }
+            addingProcessToQueue(ID);
+        }
+        // Otherwise already admitted by startAll: just wait for the processor
+        return awaitAssignment(ID, timeoutNanos);
+    }
+
+    // Room for one more process at its priority, shedding a less urgent
+    // waiter if the policy allows; otherwise the listener is told and false
+    // returned. Up to `headroom` queued processes are about to be granted
+    // free processors and do not count.
+    private boolean admit(int ID, int headroom) {
+        int priority = processTable.priority(ID);
+        if (priorityCapacities != null && queuedByPriority[priority] >= priorityCapacities[priority] + headroom) {
+            return refuse(ID, priority);
+        }
+        if (policy.size() < queueCapacity + (long) headroom) {
+            return true;
+        }
+        if (shedPolicy == ShedPolicy.DROP_LOWEST_PRIORITY) {
+            int victim = policy.last();
+            if (victim != -1 && processTable.priority(victim) > priority) {
+                shed(victim);
                 return true;
             }
         }
+        return refuse(ID, priority);
+    }
+
+    private boolean refuse(int ID, int priority) {
+        if (metrics != null) {
+            metrics.onRejected(false);
+        }
+        admissionListener.rejected(ID, priority, false);
         return false;
     }
+
+    // Takes a waiter off the queue and back to idle; its start() or
+    // schedule() throws RejectedExecutionException
+    private void shed(int ID) {
+        int slot = processTable.slot(ID);
+        int priority = processTable.priority(ID);
+        dequeue(ID, slot, priority);
+        processTable.setState(ID, ProcessTable.IDLE);
+        events.publish(SchedulerEvent.DEQUEUED, ID, priority, -1);
+        if (metrics != null) {
+            metrics.onWithdrawn(slot, priority);
+            metrics.onRejected(true);
+        }
+        failPending(ID, rejected(ID));
+        releaseWaiter(slot);
+        admissionListener.rejected(ID, priority, true);
+    }
+
+    private static RejectedExecutionException rejected(int ID) {
+        return new RejectedExecutionException("Process " + ID + " was turned away by admission control");
+    }
+
+    @Override
+    public boolean startUnlessWithdrawn(int ID) {
+        lockScheduler();
+        try {
+            start(ID);
+            // Terminated while it waited counts as not withdrawn: nothing moved
+            return !processTable.isLive(ID) || processTable.processor(ID) != -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean scheduleUnlessWithdrawn(int ID) {
+        lockScheduler();
+        try {
+            schedule(ID);
+            return processTable.processor(ID) != -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A withdrawn process can only be terminated: a waiting thread wakes and
+    // its start()/schedule() returns without a processor, as does any later
+    // start(), and a pending startAsync() fails
+    @Override
+    public int[] withdrawQueued(int max) {
+        lockScheduler();
+        try {
+            int[] withdrawn = new int[Math.max(0, Math.min(max, policy.size()))];
+            long now = now();
+            for (int i = 0; i < withdrawn.length; i++) {
+                int ID = poll(now);
+                int slot = processTable.slot(ID);
+                processTable.setState(ID, ProcessTable.WITHDRAWN);
+                events.publish(SchedulerEvent.DEQUEUED, ID, processTable.priority(ID), -1);
+                jfr.dequeued(slot);
+                if (metrics != null) {
+                    metrics.onWithdrawn(slot, processTable.priority(ID));
+                }
+                failPending(ID, "was withdrawn from the queue");
+                releaseWaiter(slot);
+                withdrawn[i] = ID;
+            }
+            return withdrawn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int queuedCount() {
+        lock.lock();
+        try {
+            return policy.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int freeProcessors() {
+        return processors.freeCount();
+    }
+
+    // Admits a group of processes in one critical section: all are queued by
+    // priority and free processors are then handed out in priority order.
+    // Does not block; each process's own thread still calls start(ID), which
+    // returns once its processor has been granted. Processes refused by
+    // admission control stay idle, and their start(ID) tries again.
+    @Override
+    public void startAll(int... ids) {
+        lockScheduler();
+        try {
+            for (int ID : ids) {
+                if (processTable.state(ID) == ProcessTable.IDLE && admit(ID, processors.freeCount())) {
+                    addingProcessToQueue(ID);
+                }
+            }
+            while (isProcessorAvailable() && !policy.isEmpty()) {
+                signalProcess();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void startRange(int firstID, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = firstID + i;
+        }
+        startAll(ids);
+    }
+
+    // Helper method to check if there are available processors
+    private boolean isProcessorAvailable() {
+        return processors.anyFree();
+    }
     
 
     @Override
     public void schedule(int ID) {
-        lock.lock();
+        lockScheduler();
         try {
-            System.out.println("Scheduling process of ID: " + ID);
-            releaseProcessor(ID);
-            signalProcess();
-            start(ID);
+            int processor = processTable.processor(ID);
+            if (processor == -1) {
+                start(ID);
+                return;
+            }
+            if (handOff(ID, processor) && !awaitAssignment(ID, Long.MAX_VALUE)) {
+                throw rejected(ID);
+            }
         } finally {
             lock.unlock();
         }
     }
 
+    @Override
+    public CompletableFuture<Integer> startAsync(int ID) {
+        lockScheduler();
+        try {
+            if (processTable.state(ID) == ProcessTable.IDLE) {
+                if (assignProcessor(ID)) {
+                    return CompletableFuture.completedFuture(processTable.processor(ID));
+                }
+                if (!admit(ID, 0)) {
+                    return CompletableFuture.failedFuture(rejected(ID));
+                }
+                addingProcessToQueue(ID);
+            } else if (processTable.processor(ID) != -1) {
+                return CompletableFuture.completedFuture(processTable.processor(ID));
+            } else if (processTable.state(ID) == ProcessTable.WITHDRAWN) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Process " + ID + " was withdrawn from the queue"));
+            }
+            return pendingStart(ID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> yieldAsync(int ID) {
+        lockScheduler();
+        try {
+            int processor = processTable.processor(ID);
+            if (processor == -1) {
+                return startAsync(ID);
+            }
+            if (!handOff(ID, processor)) {
+                return CompletableFuture.completedFuture(processor);
+            }
+            return pendingStart(ID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Keeps the caller running unless its time slice has run out or the
+    // policy says to give way (with the default policy: a process of equal or
+    // higher priority is waiting).
+    // Otherwise the caller is queued and, unless the policy picks it again,
+    // its processor goes straight to the chosen waiter and true is returned.
+    private boolean handOff(int ID, int processor) {
+        int slot = processTable.slot(ID);
+        int priority = processTable.priority(ID);
+        long now = now();
+        boolean sliceUsed = timeSlices != null && timeSlices.expired(slot);
+        if (!sliceUsed && !policy.shouldYield(ID, slot, priority, now)) {
+            return false;
+        }
+        endSlice(slot);
+        policy.onDescheduled(ID, slot, priority, now);
+        enqueue(ID, slot, priority, now);
+        int nextProcessID = poll(now);
+        if (nextProcessID == ID) {
+            policy.onDispatched(ID, slot, priority, now);
+            startSlice(slot, priority);
+            return false;
+        }
+        processTable.setProcessor(ID, -1);
+        jfr.preempted(ID, priority, processor, sliceUsed ? "time slice" : "policy");
+        events.publish(SchedulerEvent.FREED, ID, priority, processor);
+        jfr.released(ID, priority, processor);
+        if (metrics != null) {
+            metrics.onReleased(slot, priority, processor);
+        }
+        markQueued(ID, slot, priority);
+        int nextPriority = processTable.priority(nextProcessID);
+        processTable.setProcessor(nextProcessID, processor);
+        events.publish(SchedulerEvent.ALLOCATED, nextProcessID, nextPriority, processor);
+        jfr.allocated(nextProcessID, processTable.slot(nextProcessID), nextPriority, processor);
+        if (metrics != null) {
+            metrics.onGranted(processTable.slot(nextProcessID), nextPriority, processor);
+        }
+        policy.onDispatched(nextProcessID, processTable.slot(nextProcessID), nextPriority, now);
+        startSlice(processTable.slot(nextProcessID), nextPriority);
+        wakeProcess(nextProcessID);
+        return true;
+    }
+
+    private long now() {
+        return policyClock ? System.nanoTime() : 0;
+    }
+
+    private CompletableFuture<Integer> pendingStart(int ID) {
+        int slot = processTable.slot(ID);
+        if (slot >= pendingStarts.length) {
+            pendingStarts = Arrays.copyOf(pendingStarts, Math.max(slot + 1, pendingStarts.length * 2));
+        }
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        pendingStarts[slot] = future;
+        return future;
+    }
+
     @Override
     public void terminate(int ID) {
-        lock.lock();
+        lockScheduler();
         try {
-            System.out.println("Terminating process of ID: " + ID);
+            events.publish(SchedulerEvent.TERMINATED, ID, processTable.priority(ID), -1);
+            jfr.terminated(ID, processTable.priority(ID));
+            if (processTable.state(ID) == ProcessTable.READY) {
+                // Still queued, e.g. an async caller giving up on a pending start
+                dequeue(ID, processTable.slot(ID), processTable.priority(ID));
+                if (metrics != null) {
+                    metrics.onWithdrawn(processTable.slot(ID), processTable.priority(ID));
+                }
+                failPending(ID, "terminated before it was started");
+                releaseWaiter(processTable.slot(ID));
+            }
             releaseProcessor(ID);
+            policy.onTerminated(ID, processTable.slot(ID));
             signalProcess();
+            processTable.free(ID);
         } finally {
             lock.unlock();
         }
@@ -112,15 +853,19 @@ public class OS implements OS_sim_interface {
     private boolean assignProcessor(int ID) {
         lock.lock();
         try {
-            for (int i = 0; i < processorAvailability.size(); i++) {
-                if (processorAvailability.get(i)) {
-                    processorAvailability.set(i, false);
-                    processAssignment.set(ID, i);
-                    System.out.println("Allocated processor " + i + " to process " + ID);
-                    return true;
-                }
+            int processor = processors.claim();
+            if (processor == -1) {
+                return false;
             }
-            return false;
+            processTable.setProcessor(ID, processor);
+            events.publish(SchedulerEvent.ALLOCATED, ID, processTable.priority(ID), processor);
+            jfr.allocated(ID, processTable.slot(ID), processTable.priority(ID), processor);
+            if (metrics != null) {
+                metrics.onGranted(processTable.slot(ID), processTable.priority(ID), processor);
+            }
+            policy.onDispatched(ID, processTable.slot(ID), processTable.priority(ID), now());
+            startSlice(processTable.slot(ID), processTable.priority(ID));
+            return true;
         } finally {
             lock.unlock();
         }
@@ -129,11 +874,17 @@ public class OS implements OS_sim_interface {
     private void releaseProcessor(int ID) {
         lock.lock();
         try {
-            Integer processorIndex = processAssignment.get(ID);
-            if (processorIndex != null && processorIndex != -1) {
-                processorAvailability.set(processorIndex, true);
-                processAssignment.set(ID, -1);
-                System.out.println("Freed processor " + processorIndex + " from process " + ID);
+            int processorIndex = processTable.processor(ID);
+            if (processorIndex != -1) {
+                processors.release(processorIndex);
+                processTable.setProcessor(ID, -1);
+                events.publish(SchedulerEvent.FREED, ID, processTable.priority(ID), processorIndex);
+                jfr.released(ID, processTable.priority(ID), processorIndex);
+                if (metrics != null) {
+                    metrics.onReleased(processTable.slot(ID), processTable.priority(ID), processorIndex);
+                }
+                policy.onDescheduled(ID, processTable.slot(ID), processTable.priority(ID), now());
+                endSlice(processTable.slot(ID));
             }
         } finally {
             lock.unlock();
@@ -143,57 +894,185 @@ public class OS implements OS_sim_interface {
     private void addingProcessToQueue(int ID) {
         lock.lock();
         try {
-            Integer priority = processPriorities.get(ID);
-            if (priority >= processQueues.size()) {
-                while (processQueues.size() <= priority) {
-                    processQueues.add(new LinkedList<>());
-                }
-            }
-            Queue<Integer> queue = processQueues.get(priority);
-            if (queue != null) {
-                queue.offer(ID);
-                System.out.println("Enqueued process " + ID + " with priority " + priority);
-            }
+            int slot = processTable.slot(ID);
+            int priority = processTable.priority(ID);
+            enqueue(ID, slot, priority, now());
+            markQueued(ID, slot, priority);
         } finally {
             lock.unlock();
         }
     }
 
-    private void awaitAssignment(int ID) {
+    // Queue changes go through these three so per-level counts stay exact
+    private void enqueue(int ID, int slot, int priority, long now) {
+        policy.enqueue(ID, slot, priority, now);
+        queuedByPriority[priority]++;
+    }
+
+    private int poll(long now) {
+        int ID = policy.poll(now);
+        if (ID != -1) {
+            queuedByPriority[processTable.priority(ID)]--;
+        }
+        return ID;
+    }
+
+    private void dequeue(int ID, int slot, int priority) {
+        if (policy.remove(ID, slot, priority)) {
+            queuedByPriority[priority]--;
+        }
+        jfr.dequeued(slot);
+    }
+
+    private void markQueued(int ID, int slot, int priority) {
+        processTable.setState(ID, ProcessTable.READY);
+        events.publish(SchedulerEvent.ENQUEUED, ID, priority, -1);
+        jfr.enqueued(ID, slot, priority);
+        if (metrics != null) {
+            metrics.onEnqueued(slot, priority);
+        }
+    }
+
+    // Waits up to timeoutNanos (Long.MAX_VALUE: for ever) for a processor.
+    // Leaves without one if withdrawQueued() took the process off the queue or
+    // terminate() ended it, or, returning false, if it was shed or timed out;
+    // a timed-out process is taken off the queue and back to idle.
+    private boolean awaitAssignment(int ID, long timeoutNanos) {
         lock.lock();
         try {
-            Condition condition = waitConditions.get(ID);
-            if (condition != null) {
-                while (processAssignment.get(ID) == -1) {
-                    condition.await();
+            int slot = processTable.slot(ID);
+            Waiter waiter = waiterFor(slot);
+            long begin = System.nanoTime();
+            if (processTable.state(ID) == ProcessTable.READY && waitStrategy != WaitStrategy.BLOCKING && (MULTICORE || spinOnSingleCpu)) {
+                waiter.granted = false;
+                spinForAssignment(waiter);
+            }
+            while (processTable.isLive(ID) && processTable.processor(ID) == -1
+                    && processTable.state(ID) == ProcessTable.READY) {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    waiter.condition.await();
+                    continue;
+                }
+                long remaining = timeoutNanos - (System.nanoTime() - begin);
+                if (remaining <= 0) {
+                    int priority = processTable.priority(ID);
+                    dequeue(ID, slot, priority);
+                    processTable.setState(ID, ProcessTable.IDLE);
+                    events.publish(SchedulerEvent.DEQUEUED, ID, priority, -1);
+                    if (metrics != null) {
+                        metrics.onWithdrawn(slot, priority);
+                    }
+                    break;
                 }
+                waiter.condition.awaitNanos(remaining);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         } finally {
             lock.unlock();
         }
+        // Terminated while it waited: there is nothing left to run or refuse
+        return !processTable.isLive(ID) || processTable.state(ID) != ProcessTable.IDLE;
+    }
+
+    // Releases every hold on the lock and spins until the processor is granted
+    // or the budget runs out, then re-acquires. ADAPTIVE moves its budget a
+    // quarter of the way towards twice each successful wait and halves it
+    // whenever a waiter has to park anyway.
+    private void spinForAssignment(Waiter waiter) {
+        long budget = spinBudgetNanos;
+        int holds = lock.getHoldCount();
+        for (int i = 0; i < holds; i++) {
+            lock.unlock();
+        }
+        long start = System.nanoTime();
+        long waited = 0;
+        try {
+            while (!waiter.granted && (waited = System.nanoTime() - start) < budget) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            for (int i = 0; i < holds; i++) {
+                lock.lock();
+            }
+        }
+        if (waitStrategy == WaitStrategy.ADAPTIVE) {
+            if (waiter.granted) {
+                spinBudgetNanos = Math.min(MAX_SPIN_NANOS, Math.max(MIN_SPIN_NANOS, budget + (2 * waited - budget) / 4));
+            } else {
+                spinBudgetNanos = Math.max(MIN_SPIN_NANOS, budget / 2);
+            }
+        }
+    }
+
+    // Waiters are created on first wait, so processes that never block cost none
+    private Waiter waiterFor(int slot) {
+        if (slot >= waiters.length) {
+            waiters = Arrays.copyOf(waiters, Math.max(slot + 1, waiters.length * 2));
+        }
+        Waiter waiter = waiters[slot];
+        if (waiter == null) {
+            waiter = waiters[slot] = new Waiter(lock.newCondition());
+        }
+        return waiter;
     }
 
     private void signalProcess() {
         lock.lock();
         try {
-            for (int priority = 9; priority >= 0; priority--) {
-                Queue<Integer> currentQueue = processQueues.get(priority);
-                if (currentQueue != null && !currentQueue.isEmpty()) {
-                    Integer nextProcessID = currentQueue.poll();
-                    if (assignProcessor(nextProcessID)) {
-                        Condition processCondition = waitConditions.get(nextProcessID);
-                        if (processCondition != null) {
-                            processCondition.signal();
-                            System.out.println("Signaled process: " + nextProcessID);
-                            return;
-                        }
-                    }
+            if (policy.isEmpty()) {
+                if (metrics != null) {
+                    metrics.onEmptySignal();
                 }
+                return;
             }
+            if (!isProcessorAvailable()) {
+                return;
+            }
+            int nextProcessID = poll(now());
+            assignProcessor(nextProcessID);
+            wakeProcess(nextProcessID);
         } finally {
             lock.unlock();
         }
     }
+
+    private void failPending(int ID, String reason) {
+        failPending(ID, new IllegalStateException("Process " + ID + " " + reason));
+    }
+
+    private void failPending(int ID, RuntimeException failure) {
+        int slot = processTable.slot(ID);
+        if (slot < pendingStarts.length && pendingStarts[slot] != null) {
+            CompletableFuture<?> future = pendingStarts[slot];
+            pendingStarts[slot] = null;
+            asyncExecutor.execute(() -> future.completeExceptionally(failure));
+        }
+    }
+
+    // Wakes a waiter that is leaving the queue without a processor
+    private void releaseWaiter(int slot) {
+        if (slot < waiters.length && waiters[slot] != null) {
+            waiters[slot].granted = true;
+            waiters[slot].condition.signal();
+        }
+    }
+
+    private void wakeProcess(int ID) {
+        int slot = processTable.slot(ID);
+        // No waiter yet if the process's thread has not waited (startAll, async callers)
+        if (slot < waiters.length && waiters[slot] != null) {
+            waiters[slot].granted = true;
+            waiters[slot].condition.signal();
+        }
+        if (slot < pendingStarts.length && pendingStarts[slot] != null) {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Integer> future = (CompletableFuture<Integer>) pendingStarts[slot];
+            pendingStarts[slot] = null;
+            Integer processor = processTable.processor(ID);
+            asyncExecutor.execute(() -> future.complete(processor));
+        }
+        events.publish(SchedulerEvent.SIGNALED, ID, processTable.priority(ID), processTable.processor(ID));
+        jfr.signaled(ID, processTable.priority(ID), processTable.processor(ID));
+    }
 }
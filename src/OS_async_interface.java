@@ -0,0 +1,16 @@
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking companion to OS_sim_interface. Instead of parking the calling
+// thread until a processor is granted, these return a future that the
+// scheduler completes with the granted processor index, so a small pool of
+// threads can drive many simulated processes. terminate() never blocks and is
+// used as is.
+public interface OS_async_interface {
+
+	// Asynchronous start(ID)
+	public CompletableFuture<Integer> startAsync(int ID);
+
+	// Asynchronous schedule(ID); completes immediately if the process keeps its processor
+	public CompletableFuture<Integer> yieldAsync(int ID);
+
+}
@@ -0,0 +1,60 @@
+// The default policy: strict priority, FIFO within a level. A yielding process
+// gives way only to a waiter of equal or more urgent priority.
+public class PriorityPolicy implements SchedulingPolicy {
+    private final ReadyQueue readyQueue;
+
+    public PriorityPolicy(int priorityLevels) {
+        readyQueue = new ReadyQueue(priorityLevels);
+    }
+
+    @Override
+    public int levels() {
+        return readyQueue.levels();
+    }
+
+    @Override
+    public int size() {
+        return readyQueue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return readyQueue.isEmpty();
+    }
+
+    @Override
+    public void enqueue(int pid, int slot, int priority, long now) {
+        readyQueue.offer(pid, priority);
+    }
+
+    @Override
+    public int poll(long now) {
+        return readyQueue.poll();
+    }
+
+    @Override
+    public boolean remove(int pid, int slot, int priority) {
+        return readyQueue.remove(pid, priority);
+    }
+
+    @Override
+    public boolean shouldYield(int pid, int slot, int priority, long now) {
+        int nextPriority = readyQueue.highestPriority();
+        return nextPriority != -1 && nextPriority <= priority;
+    }
+
+    @Override
+    public int[] queuedInOrder() {
+        return readyQueue.toArray();
+    }
+
+    @Override
+    public int last() {
+        return readyQueue.peekLast();
+    }
+
+    @Override
+    public boolean usesClock() {
+        return false;
+    }
+}
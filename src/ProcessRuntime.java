@@ -0,0 +1,164 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Runs simulated processes against an OS_sim_interface, one thread each. The
+// body supplied to spawn() runs between start() and terminate() and may yield
+// with schedule(). By default processes run on virtual threads when the JVM
+// offers them (Java 21+), so a million processes cost heap rather than OS
+// threads; on older JVMs they fall back to platform threads. OS and
+// ConcurrentOS block only through ReentrantLock conditions and LockSupport, and
+// never inside synchronized, so waiting processes do not pin their carriers.
+public class ProcessRuntime implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface ProcessBody {
+        void run(SimulatedProcess process) throws Exception;
+    }
+
+    // Handle passed to a running body
+    public static final class SimulatedProcess {
+        private final OS_sim_interface os;
+        private final int pid;
+
+        SimulatedProcess(OS_sim_interface os, int pid) {
+            this.os = os;
+            this.pid = pid;
+        }
+
+        public int pid() {
+            return pid;
+        }
+
+        // Offers the processor to an equal or more urgent process, returning once this one runs again
+        public void schedule() {
+            os.schedule(pid);
+        }
+
+        // For CPU-bound bodies: yields if OS time slicing says this process's
+        // slice has run out, and otherwise returns at once
+        public void yieldIfPreempted() {
+            if (os instanceof OS && ((OS) os).preemptionPending(pid)) {
+                os.schedule(pid);
+            }
+        }
+    }
+
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+    private final OS_sim_interface os;
+    private final ThreadFactory threads;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+
+    public ProcessRuntime(OS_sim_interface os) {
+        this(os, defaultThreadFactory());
+    }
+
+    public ProcessRuntime(OS_sim_interface os, ThreadFactory threads) {
+        this.os = os;
+        this.threads = threads;
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    // Virtual threads where available, platform threads otherwise
+    public static ThreadFactory defaultThreadFactory() {
+        return VIRTUAL_THREADS != null ? VIRTUAL_THREADS : Executors.defaultThreadFactory();
+    }
+
+    // Thread.ofVirtual().factory(), looked up reflectively so the code still builds for Java 17
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Registers a process and launches it; returns its PID
+    public int spawn(int priority, ProcessBody body) {
+        int pid = os.reg(priority);
+        SimulatedProcess process = new SimulatedProcess(os, pid);
+        active.incrementAndGet();
+        Thread thread = threads.newThread(() -> run(process, body));
+        if (thread == null) {
+            finished();
+            throw new IllegalStateException("Thread factory refused to create a thread for process " + pid);
+        }
+        thread.start();
+        return pid;
+    }
+
+    public int activeCount() {
+        return active.get();
+    }
+
+    public int failureCount() {
+        return failures.get();
+    }
+
+    // First exception thrown by a process body, or null
+    public Throwable firstFailure() {
+        return firstFailure.get();
+    }
+
+    // Blocks until every spawned process has terminated
+    public void awaitCompletion() throws InterruptedException {
+        lock.lock();
+        try {
+            while (active.get() > 0) {
+                idle.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits like awaitCompletion(); if interrupted, stops waiting and keeps
+    // the interrupt status set for the caller
+    @Override
+    public void close() {
+        try {
+            awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(SimulatedProcess process, ProcessBody body) {
+        try {
+            os.start(process.pid);
+            try {
+                body.run(process);
+            } finally {
+                os.terminate(process.pid);
+            }
+        } catch (Throwable e) {
+            failures.incrementAndGet();
+            firstFailure.compareAndSet(null, e);
+        } finally {
+            finished();
+        }
+    }
+
+    private void finished() {
+        if (active.decrementAndGet() == 0) {
+            lock.lock();
+            try {
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Process control blocks stored column-wise in primitive arrays, indexed by
+// slot. A PID packs a slot and that slot's generation; terminated slots go on
+// a free list and get a new generation when reused, so a stale PID is detected
+// instead of silently addressing the slot's next owner. Capacity tracks the
+// peak number of live processes rather than the number ever registered.
+// Not thread-safe: callers guard it with their own lock.
+public class ProcessTable {
+    public static final byte FREE = 0;
+    public static final byte IDLE = 1;
+    public static final byte READY = 2;
+    public static final byte RUNNING = 3;
+    // Taken off the queue by OS.withdrawQueued(); only terminate() is expected next
+    public static final byte WITHDRAWN = 4;
+
+    // 22 bits of slot (4M live processes) and 9 bits of generation keep PIDs positive
+    static final int SLOT_BITS = 22;
+    static final int MAX_SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = MAX_SLOTS - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] priorities;
+    private int[] processors;
+    private int[] generations;
+    private int[] nextFree;
+    private byte[] states;
+    private int freeHead = -1;
+    private int highWater;
+    private int live;
+
+    public ProcessTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ProcessTable(int initialCapacity) {
+        int capacity = Math.max(1, Math.min(initialCapacity, MAX_SLOTS));
+        priorities = new int[capacity];
+        processors = new int[capacity];
+        generations = new int[capacity];
+        nextFree = new int[capacity];
+        states = new byte[capacity];
+    }
+
+    public int liveCount() {
+        return live;
+    }
+
+    public int capacity() {
+        return states.length;
+    }
+
+    public int register(int priority) {
+        int slot;
+        if (freeHead != -1) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (highWater == MAX_SLOTS) {
+                throw new IllegalStateException("Process table full: " + MAX_SLOTS + " live processes");
+            }
+            if (highWater == states.length) {
+                resize(states.length * 2);
+            }
+            slot = highWater++;
+        }
+        priorities[slot] = priority;
+        processors[slot] = -1;
+        states[slot] = IDLE;
+        live++;
+        return (generations[slot] << SLOT_BITS) | slot;
+    }
+
+    // Registers one process per priority in fresh consecutive slots, so the
+    // PIDs form the range [first, first + priorities.length); returns first.
+    // The columns are grown once for the whole batch. Recycled slots are not
+    // used here since they would break the range.
+    public int registerRange(int[] priorities) {
+        int n = priorities.length;
+        if (n > MAX_SLOTS - highWater) {
+            throw new IllegalStateException("Process table full: " + MAX_SLOTS + " live processes");
+        }
+        if (highWater + n > states.length) {
+            resize(Math.max(highWater + n, states.length * 2));
+        }
+        int first = highWater;
+        System.arraycopy(priorities, 0, this.priorities, first, n);
+        Arrays.fill(processors, first, first + n, -1);
+        Arrays.fill(states, first, first + n, IDLE);
+        highWater += n;
+        live += n;
+        // Never-used slots are still at generation 0, so PID == slot
+        return first;
+    }
+
+    public void free(int pid) {
+        int slot = slot(pid);
+        states[slot] = FREE;
+        processors[slot] = -1;
+        generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        live--;
+    }
+
+    public boolean isLive(int pid) {
+        int slot = pid & SLOT_MASK;
+        return pid >= 0 && slot < highWater && states[slot] != FREE
+                && generations[slot] == pid >>> SLOT_BITS;
+    }
+
+    // Slot bits of a PID, without validation or locking
+    static int slotOf(int pid) {
+        return pid & SLOT_MASK;
+    }
+
+    // Validates the PID and returns its slot, for callers keeping their own per-slot data
+    public int slot(int pid) {
+        if (!isLive(pid)) {
+            throw new IllegalArgumentException("Unknown or terminated process " + pid);
+        }
+        return pid & SLOT_MASK;
+    }
+
+    public int priority(int pid) {
+        return priorities[slot(pid)];
+    }
+
+    public int processor(int pid) {
+        return processors[slot(pid)];
+    }
+
+    public void setProcessor(int pid, int processor) {
+        int slot = slot(pid);
+        processors[slot] = processor;
+        states[slot] = processor == -1 ? IDLE : RUNNING;
+    }
+
+    public byte state(int pid) {
+        return states[slot(pid)];
+    }
+
+    public void setState(int pid, byte state) {
+        states[slot(pid)] = state;
+    }
+
+    // One past the highest slot ever used; slots from here on were never used
+    public int slotLimit() {
+        return highWater;
+    }
+
+    // PID of the slot's current (or, if free, last) process
+    public int pidAt(int slot) {
+        return (generations[slot] << SLOT_BITS) | slot;
+    }
+
+    // Processor held by the process in the slot, or -1
+    public int processorAt(int slot) {
+        return processors[slot];
+    }
+
+    // Copy trimmed to the slots in use, for snapshots taken under the owner's lock
+    public ProcessTable copy() {
+        ProcessTable copy = new ProcessTable(0);
+        int capacity = Math.max(1, highWater);
+        copy.priorities = Arrays.copyOf(priorities, capacity);
+        copy.processors = Arrays.copyOf(processors, capacity);
+        copy.generations = Arrays.copyOf(generations, capacity);
+        copy.nextFree = Arrays.copyOf(nextFree, capacity);
+        copy.states = Arrays.copyOf(states, capacity);
+        copy.freeHead = freeHead;
+        copy.highWater = highWater;
+        copy.live = live;
+        return copy;
+    }
+
+    // Size of writeTo's output: three counts, four int columns and the states
+    int serializedBytes() {
+        return 12 + highWater * 17;
+    }
+
+    // Writes the columns in bulk; the buffer's byte order is kept
+    void writeTo(ByteBuffer out) {
+        out.putInt(highWater).putInt(freeHead).putInt(live);
+        for (int[] column : new int[][] {priorities, processors, generations, nextFree}) {
+            out.asIntBuffer().put(column, 0, highWater);
+            out.position(out.position() + highWater * 4);
+        }
+        out.put(states, 0, highWater);
+    }
+
+    static ProcessTable readFrom(ByteBuffer in) {
+        int highWater = in.getInt();
+        int freeHead = in.getInt();
+        int live = in.getInt();
+        if (highWater < 0 || highWater > MAX_SLOTS || freeHead < -1 || freeHead >= highWater
+                || live < 0 || live > highWater) {
+            throw new IllegalArgumentException("Corrupt process table: " + highWater + " slots, " + live + " live");
+        }
+        ProcessTable table = new ProcessTable(Math.max(INITIAL_CAPACITY, highWater));
+        for (int[] column : new int[][] {table.priorities, table.processors, table.generations, table.nextFree}) {
+            in.asIntBuffer().get(column, 0, highWater);
+            in.position(in.position() + highWater * 4);
+        }
+        in.get(table.states, 0, highWater);
+        table.freeHead = freeHead;
+        table.highWater = highWater;
+        table.live = live;
+        return table;
+    }
+
+    private void resize(int capacity) {
+        capacity = Math.min(capacity, MAX_SLOTS);
+        priorities = Arrays.copyOf(priorities, capacity);
+        processors = Arrays.copyOf(processors, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+}
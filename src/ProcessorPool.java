@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Free-processor set packed into long words, one bit per processor (set = free).
+// A second level of summary words marks which words may still hold a free bit,
+// so claim() finds the lowest free processor with two numberOfTrailingZeros
+// calls for pools of up to 4096 processors. All operations are lock-free and
+// allocation-free; release() is idempotent.
+public class ProcessorPool {
+    private final int size;
+    private final AtomicLongArray words;
+    private final AtomicLongArray summary;
+    private final AtomicInteger free;
+
+    public ProcessorPool(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative processor count: " + size);
+        }
+        this.size = size;
+        int nWords = (size + 63) >>> 6;
+        this.words = new AtomicLongArray(nWords);
+        this.summary = new AtomicLongArray((nWords + 63) >>> 6);
+        for (int w = 0; w < nWords; w++) {
+            int bits = Math.min(64, size - (w << 6));
+            words.set(w, bits == 64 ? -1L : (1L << bits) - 1);
+            summary.set(w >>> 6, summary.get(w >>> 6) | (1L << w));
+        }
+        this.free = new AtomicInteger(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int freeCount() {
+        return free.get();
+    }
+
+    public boolean anyFree() {
+        return free.get() > 0;
+    }
+
+    public boolean isFree(int processor) {
+        return (words.get(word(processor)) & (1L << processor)) != 0;
+    }
+
+    // Claims the lowest-indexed free processor, or returns -1 if none is free
+    public int claim() {
+        if (free.get() == 0) {
+            return -1;
+        }
+        for (int s = 0; s < summary.length(); s++) {
+            long hint = summary.get(s);
+            while (hint != 0) {
+                int w = (s << 6) + Long.numberOfTrailingZeros(hint);
+                long word = words.get(w);
+                if (word == 0) {
+                    clearSummary(w);
+                    hint &= hint - 1;
+                    continue;
+                }
+                long bit = word & -word;
+                if (words.compareAndSet(w, word, word & ~bit)) {
+                    free.decrementAndGet();
+                    return (w << 6) + Long.numberOfTrailingZeros(bit);
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Claims the given processor if it is free
+    public boolean claim(int processor) {
+        int w = word(processor);
+        long bit = 1L << processor;
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & bit) == 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(w, word, word & ~bit));
+        free.decrementAndGet();
+        return true;
+    }
+
+    // Claims every processor if all are free; otherwise claims none and
+    // returns false. For a caller retiring the pool, so no claim() can take a
+    // processor it is about to drop.
+    public boolean claimAll() {
+        for (int p = 0; p < size; p++) {
+            if (!claim(p)) {
+                while (--p >= 0) {
+                    release(p);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void release(int processor) {
+        int w = word(processor);
+        long bit = 1L << processor;
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & bit) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(w, word, word | bit));
+        free.incrementAndGet();
+        setSummary(w);
+    }
+
+    // Index of the processor's word; the bits past size in the last word must
+    // never be set, or claim() would hand out processors that do not exist
+    private int word(int processor) {
+        if (processor < 0 || processor >= size) {
+            throw new IllegalArgumentException("Processor " + processor + " outside 0.." + (size - 1));
+        }
+        return processor >>> 6;
+    }
+
+    // A summary bit may only be cleared while its word is empty; re-check after
+    // clearing so a concurrent release() is never hidden from claim()
+    private void clearSummary(int w) {
+        long mask = 1L << w;
+        long s;
+        do {
+            s = summary.get(w >>> 6);
+        } while ((s & mask) != 0 && !summary.compareAndSet(w >>> 6, s, s & ~mask));
+        if (words.get(w) != 0) {
+            setSummary(w);
+        }
+    }
+
+    private void setSummary(int w) {
+        long mask = 1L << w;
+        long s;
+        do {
+            s = summary.get(w >>> 6);
+        } while ((s & mask) == 0 && !summary.compareAndSet(w >>> 6, s, s | mask));
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.Arrays;
+
+// Ready queue of process IDs with one int ring buffer per priority level and a
+// bitmask of non-empty levels. Level 0 is the most urgent (as in Linux, where
+// 0-139 are the usual levels); PIDs within a level are served FIFO. Finding
+// the most urgent waiter is a numberOfTrailingZeros over one word per 64
+// levels and nothing is allocated once a level's buffer has grown to its
+// working size. Not thread-safe: callers guard it with their own lock.
+public class ReadyQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int[][] buffers;
+    private final int[] heads;
+    private final int[] counts;
+    private final long[] nonEmpty;
+    private int size;
+
+    public ReadyQueue(int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Priority levels must be positive: " + levels);
+        }
+        buffers = new int[levels][];
+        heads = new int[levels];
+        counts = new int[levels];
+        nonEmpty = new long[(levels + 63) >>> 6];
+    }
+
+    public int levels() {
+        return buffers.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(int priority) {
+        return counts[priority];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void offer(int pid, int priority) {
+        if (priority < 0 || priority >= buffers.length) {
+            throw new IllegalArgumentException("Priority " + priority + " outside 0.." + (buffers.length - 1));
+        }
+        int[] buffer = buffers[priority];
+        int count = counts[priority];
+        if (buffer == null) {
+            buffer = buffers[priority] = new int[INITIAL_CAPACITY];
+        } else if (count == buffer.length) {
+            buffer = grow(priority);
+        }
+        buffer[(heads[priority] + count) & (buffer.length - 1)] = pid;
+        counts[priority] = count + 1;
+        nonEmpty[priority >>> 6] |= 1L << priority;
+        size++;
+    }
+
+    // Most urgent non-empty level, or -1 when the queue is empty
+    public int highestPriority() {
+        for (int w = 0; w < nonEmpty.length; w++) {
+            if (nonEmpty[w] != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(nonEmpty[w]);
+            }
+        }
+        return -1;
+    }
+
+    // Least urgent non-empty level, or -1 when the queue is empty
+    public int lowestPriority() {
+        for (int w = nonEmpty.length - 1; w >= 0; w--) {
+            if (nonEmpty[w] != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(nonEmpty[w]);
+            }
+        }
+        return -1;
+    }
+
+    // The PID poll() would return last: the newest of the least urgent level
+    public int peekLast() {
+        int priority = lowestPriority();
+        if (priority == -1) {
+            return -1;
+        }
+        int[] buffer = buffers[priority];
+        return buffer[(heads[priority] + counts[priority] - 1) & (buffer.length - 1)];
+    }
+
+    // Removes the first PID of the most urgent level, or returns -1 when empty
+    public int poll() {
+        int priority = highestPriority();
+        return priority == -1 ? -1 : poll(priority);
+    }
+
+    // Removes the first PID queued at the given level, or returns -1 if it is empty
+    public int poll(int priority) {
+        int count = counts[priority];
+        if (count == 0) {
+            return -1;
+        }
+        int[] buffer = buffers[priority];
+        int head = heads[priority];
+        int pid = buffer[head];
+        heads[priority] = (head + 1) & (buffer.length - 1);
+        counts[priority] = count - 1;
+        if (count == 1) {
+            nonEmpty[priority >>> 6] &= ~(1L << priority);
+        }
+        size--;
+        return pid;
+    }
+
+    // Withdraws a queued PID from its level, keeping the others in order.
+    // Linear in the length of that level; returns false if it was not queued.
+    public boolean remove(int pid, int priority) {
+        int count = counts[priority];
+        int[] buffer = buffers[priority];
+        int mask = count == 0 ? 0 : buffer.length - 1;
+        int head = heads[priority];
+        for (int i = 0; i < count; i++) {
+            if (buffer[(head + i) & mask] == pid) {
+                for (int j = i; j < count - 1; j++) {
+                    buffer[(head + j) & mask] = buffer[(head + j + 1) & mask];
+                }
+                counts[priority] = count - 1;
+                if (count == 1) {
+                    nonEmpty[priority >>> 6] &= ~(1L << priority);
+                }
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Queued PIDs in poll order: level by level, FIFO within each
+    public int[] toArray() {
+        int[] pids = new int[size];
+        int n = 0;
+        for (int priority = 0; priority < buffers.length; priority++) {
+            int count = counts[priority];
+            if (count == 0) {
+                continue;
+            }
+            int[] buffer = buffers[priority];
+            int head = heads[priority];
+            int tail = Math.min(count, buffer.length - head);
+            System.arraycopy(buffer, head, pids, n, tail);
+            System.arraycopy(buffer, 0, pids, n + tail, count - tail);
+            n += count;
+        }
+        return pids;
+    }
+
+    // Doubles a full ring buffer, unrolling it so the head is back at index 0
+    private int[] grow(int priority) {
+        int[] old = buffers[priority];
+        int head = heads[priority];
+        int[] buffer = Arrays.copyOfRange(old, head, head + old.length * 2);
+        System.arraycopy(old, 0, buffer, old.length - head, head);
+        buffers[priority] = buffer;
+        heads[priority] = 0;
+        return buffer;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Client side of ShardServer: a SchedulerShard whose calls travel over one
+// Unix domain socket connection. Any number of threads may call at once; each
+// request carries an id and a reader thread hands every response to the
+// caller waiting for it, so a blocked start() does not hold up other calls.
+public class RemoteShard implements SchedulerShard, AutoCloseable {
+    private final Path socket;
+    private final SocketChannel channel;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, CompletableFuture<int[]>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile IOException failure;
+
+    private RemoteShard(Path socket) throws IOException {
+        this.socket = socket;
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socket));
+        reader = new Thread(this::readLoop, "remote-shard " + socket.getFileName());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public static RemoteShard connect(Path socket) throws IOException {
+        return new RemoteShard(socket);
+    }
+
+    @Override
+    public void set_number_of_processors(int nProcessors) {
+        call(ShardServer.SET_PROCESSORS, nProcessors);
+    }
+
+    @Override
+    public int reg(int priority) {
+        return call(ShardServer.REG, priority)[0];
+    }
+
+    @Override
+    public void start(int ID) {
+        call(ShardServer.START, ID);
+    }
+
+    @Override
+    public void schedule(int ID) {
+        call(ShardServer.SCHEDULE, ID);
+    }
+
+    @Override
+    public void terminate(int ID) {
+        call(ShardServer.TERMINATE, ID);
+    }
+
+    @Override
+    public boolean startUnlessWithdrawn(int ID) {
+        return call(ShardServer.START_UNLESS_WITHDRAWN, ID)[0] != 0;
+    }
+
+    @Override
+    public boolean scheduleUnlessWithdrawn(int ID) {
+        return call(ShardServer.SCHEDULE_UNLESS_WITHDRAWN, ID)[0] != 0;
+    }
+
+    @Override
+    public void startAll(int... ids) {
+        for (int ID : ids) {
+            call(ShardServer.ADMIT, ID);
+        }
+    }
+
+    @Override
+    public int[] withdrawQueued(int max) {
+        return call(ShardServer.WITHDRAW_QUEUED, max);
+    }
+
+    @Override
+    public int queuedCount() {
+        return call(ShardServer.QUEUED_COUNT, 0)[0];
+    }
+
+    @Override
+    public int freeProcessors() {
+        return call(ShardServer.FREE_PROCESSORS, 0)[0];
+    }
+
+    private int[] call(int operation, int argument) {
+        int id = nextId.getAndIncrement();
+        CompletableFuture<int[]> response = new CompletableFuture<>();
+        pending.put(id, response);
+        ByteBuffer request = ByteBuffer.allocate(ShardServer.REQUEST_BYTES);
+        request.putInt(id).putInt(operation).putInt(argument).flip();
+        writeLock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            throw new UncheckedIOException("Shard at " + socket + " is unreachable", e);
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    // Whatever ends this thread fails the connection, including a malformed
+    // response; otherwise callers would wait for answers nobody reads
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(ShardServer.RESPONSE_HEADER_BYTES);
+        IOException cause = new IOException("Response reader stopped");
+        try {
+            while (true) {
+                header.clear();
+                ShardServer.readFully(channel, header);
+                int id = header.getInt(0);
+                boolean failed = header.getInt(4) != 0;
+                int length = header.getInt(8);
+                ByteBuffer body = ByteBuffer.allocate(failed ? length : length * 4);
+                ShardServer.readFully(channel, body);
+                CompletableFuture<int[]> response = pending.remove(id);
+                if (response == null) {
+                    continue;
+                }
+                if (failed) {
+                    response.completeExceptionally(new IllegalStateException(
+                            "Shard at " + socket + ": " + new String(body.array(), StandardCharsets.UTF_8)));
+                } else {
+                    int[] result = new int[length];
+                    body.flip().asIntBuffer().get(result);
+                    response.complete(result);
+                }
+            }
+        } catch (IOException e) {
+            cause = e;
+        } catch (RuntimeException e) {
+            cause = new IOException("Malformed response", e);
+        } finally {
+            failure = cause;
+            for (CompletableFuture<int[]> response : pending.values()) {
+                response.completeExceptionally(new UncheckedIOException("Shard at " + socket + " disconnected", cause));
+            }
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,11 @@
+// Scheduling transitions reported to a SchedulerEventSink
+public enum SchedulerEvent {
+    REGISTERED,
+    ENQUEUED,
+    ALLOCATED,
+    FREED,
+    SIGNALED,
+    TERMINATED,
+    // Left the ready queue without a processor: shed, timed out or withdrawn
+    DEQUEUED
+}
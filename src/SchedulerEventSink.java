@@ -0,0 +1,10 @@
+// Receives scheduling transitions from an OS. publish() is called on the
+// scheduling path, often with the scheduler lock held, so implementations must
+// not block. Fields that do not apply to an event are -1.
+@FunctionalInterface
+public interface SchedulerEventSink {
+    // Discards everything; the default, so tracing costs nothing when off
+    SchedulerEventSink DISABLED = (event, pid, priority, processor) -> { };
+
+    void publish(SchedulerEvent event, int pid, int priority, int processor);
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder events for OS's scheduling transitions, so recordings
+// show which process waited, at which priority and for how long next to GC,
+// CPU and lock events. OS calls in here with its lock held. Until Flight
+// Recorder has been started each method returns at once, so the event
+// classes are not even loaded (loading the first one costs a few hundred
+// milliseconds of JFR setup). After that each creates its event and checks
+// shouldCommit(), which is false unless a recording enables the event.
+// scheduler.jfc, next to this file, enables them all.
+//
+// Allocated is a duration event spanning the wait: it begins when the
+// process is queued and ends when a processor is granted, so a threshold in
+// the settings keeps only the long waits. A grant without queuing has no
+// duration. Other events are instant.
+final class SchedulerJfr {
+    private static final String CATEGORY = "OS Simulation";
+
+    @Name("os.simulation.Registered")
+    @Label("Process Registered")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Registered extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+    }
+
+    @Name("os.simulation.Enqueued")
+    @Label("Process Enqueued")
+    @Description("A process joined the ready queue")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Enqueued extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+    }
+
+    @Name("os.simulation.Allocated")
+    @Label("Processor Allocated")
+    @Description("A process was granted a processor; the duration is its wait in the ready queue")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Allocated extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+        @Label("Processor")
+        int processor;
+    }
+
+    @Name("os.simulation.Released")
+    @Label("Processor Released")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Released extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+        @Label("Processor")
+        int processor;
+    }
+
+    @Name("os.simulation.Signaled")
+    @Label("Process Signaled")
+    @Description("A waiting process was woken to run on its new processor")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Signaled extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+        @Label("Processor")
+        int processor;
+    }
+
+    @Name("os.simulation.Preempted")
+    @Label("Process Preempted")
+    @Description("A running process lost its processor to another process")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Preempted extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+        @Label("Processor")
+        int processor;
+        @Label("Reason")
+        @Description("time slice, policy or resize")
+        String reason;
+    }
+
+    @Name("os.simulation.Terminated")
+    @Label("Process Terminated")
+    @Category({CATEGORY, "Scheduler"})
+    @StackTrace(false)
+    static final class Terminated extends Event {
+        @Label("PID")
+        int pid;
+        @Label("Priority")
+        int priority;
+    }
+
+    // Begun Allocated events of queued processes by slot, only while recording
+    private Allocated[] waits = new Allocated[16];
+
+    void registered(int pid, int priority) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Registered event = new Registered();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.commit();
+        }
+    }
+
+    void enqueued(int pid, int slot, int priority) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Enqueued event = new Enqueued();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.commit();
+        }
+        Allocated wait = new Allocated();
+        if (wait.isEnabled()) {
+            if (slot >= waits.length) {
+                waits = Arrays.copyOf(waits, Math.max(slot + 1, waits.length * 2));
+            }
+            wait.begin();
+            waits[slot] = wait;
+        }
+    }
+
+    // Left the queue without a processor: withdrawn, shed, timed out or terminated
+    void dequeued(int slot) {
+        if (slot < waits.length) {
+            waits[slot] = null;
+        }
+    }
+
+    void allocated(int pid, int slot, int priority, int processor) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Allocated event = slot < waits.length ? waits[slot] : null;
+        if (event != null) {
+            waits[slot] = null;
+        } else {
+            event = new Allocated();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.processor = processor;
+            event.commit();
+        }
+    }
+
+    void released(int pid, int priority, int processor) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Released event = new Released();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.processor = processor;
+            event.commit();
+        }
+    }
+
+    void signaled(int pid, int priority, int processor) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Signaled event = new Signaled();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.processor = processor;
+            event.commit();
+        }
+    }
+
+    void preempted(int pid, int priority, int processor, String reason) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Preempted event = new Preempted();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.processor = processor;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    void terminated(int pid, int priority) {
+        if (!FlightRecorder.isInitialized()) {
+            return;
+        }
+        Terminated event = new Terminated();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.priority = priority;
+            event.commit();
+        }
+    }
+}
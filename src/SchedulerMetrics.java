@@ -0,0 +1,287 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Instrumentation for OS: per-priority wait-time (queued until granted) and
+// run-time (granted until released) histograms, queue depths, per-processor
+// utilisation and dispatch / empty-signal / lock-contention / admission
+// rejection counters.
+// Counters are striped LongAdders and gauges are atomics, so snapshot() and
+// the JMX getters read them without touching the scheduler lock. The on*
+// hooks are called by OS with its lock held, which also guards the per-slot
+// timestamps.
+public class SchedulerMetrics implements SchedulerMetricsMXBean {
+
+    // Point-in-time copy of the metrics
+    public static final class Snapshot {
+        public final long dispatches;
+        public final long emptySignals;
+        public final long lockContentions;
+        public final long rejections;
+        public final long sheds;
+        public final long[] queueDepths;
+        public final double[] processorUtilization;
+        public final long[] waitTimeP50Nanos;
+        public final long[] waitTimeP99Nanos;
+        public final long[] runTimeP50Nanos;
+        public final long[] runTimeP99Nanos;
+
+        Snapshot(SchedulerMetrics metrics) {
+            dispatches = metrics.getDispatchCount();
+            emptySignals = metrics.getEmptySignalCount();
+            lockContentions = metrics.getLockContentionCount();
+            rejections = metrics.getRejectedCount();
+            sheds = metrics.getShedCount();
+            queueDepths = metrics.getQueueDepths();
+            processorUtilization = metrics.getProcessorUtilization();
+            waitTimeP50Nanos = metrics.getWaitTimeP50Nanos();
+            waitTimeP99Nanos = metrics.getWaitTimeP99Nanos();
+            runTimeP50Nanos = metrics.getRunTimeP50Nanos();
+            runTimeP99Nanos = metrics.getRunTimeP99Nanos();
+        }
+    }
+
+    private final LatencyHistogram[] waitTimes;
+    private final LatencyHistogram[] runTimes;
+    private final AtomicLongArray queueDepths;
+    private final LongAdder dispatches = new LongAdder();
+    private final LongAdder emptySignals = new LongAdder();
+    private final LongAdder lockContentions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder sheds = new LongAdder();
+
+    // Per processor: accumulated busy time and start of the current busy span (0 = idle)
+    private volatile AtomicLongArray busyNanos = new AtomicLongArray(0);
+    private volatile AtomicLongArray busySince = new AtomicLongArray(0);
+    private volatile long startedAt = System.nanoTime();
+
+    // Per process table slot, guarded by the OS lock (0 = not set)
+    private long[] enqueuedAt = new long[16];
+    private long[] grantedAt = new long[16];
+
+    public SchedulerMetrics(int priorityLevels) {
+        waitTimes = new LatencyHistogram[priorityLevels];
+        runTimes = new LatencyHistogram[priorityLevels];
+        for (int i = 0; i < priorityLevels; i++) {
+            waitTimes[i] = new LatencyHistogram();
+            runTimes[i] = new LatencyHistogram();
+        }
+        queueDepths = new AtomicLongArray(priorityLevels);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public LatencyHistogram waitTimes(int priority) {
+        return waitTimes[priority];
+    }
+
+    public LatencyHistogram runTimes(int priority) {
+        return runTimes[priority];
+    }
+
+    // Registers this object with the platform MBean server and returns its name
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("os.simulation:type=SchedulerMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // Surviving processors keep their busy time and current busy span
+    void onProcessorsChanged(int nProcessors) {
+        AtomicLongArray busy = new AtomicLongArray(nProcessors);
+        AtomicLongArray since = new AtomicLongArray(nProcessors);
+        for (int i = 0; i < Math.min(nProcessors, busySince.length()); i++) {
+            busy.set(i, busyNanos.get(i));
+            since.set(i, busySince.get(i));
+        }
+        busyNanos = busy;
+        busySince = since;
+    }
+
+    void onEnqueued(int slot, int priority) {
+        ensureSlot(slot);
+        enqueuedAt[slot] = System.nanoTime();
+        queueDepths.incrementAndGet(priority);
+    }
+
+    // Removed from the queue without being granted a processor
+    void onWithdrawn(int slot, int priority) {
+        enqueuedAt[slot] = 0;
+        queueDepths.decrementAndGet(priority);
+    }
+
+    void onGranted(int slot, int priority, int processor) {
+        ensureSlot(slot);
+        long now = System.nanoTime();
+        long queued = enqueuedAt[slot];
+        if (queued != 0) {
+            enqueuedAt[slot] = 0;
+            queueDepths.decrementAndGet(priority);
+            waitTimes[priority].record(now - queued);
+        } else {
+            waitTimes[priority].record(0);
+        }
+        grantedAt[slot] = now;
+        AtomicLongArray since = busySince;
+        if (processor < since.length()) {
+            since.set(processor, now);
+        }
+        dispatches.increment();
+    }
+
+    void onReleased(int slot, int priority, int processor) {
+        long now = System.nanoTime();
+        if (slot < grantedAt.length && grantedAt[slot] != 0) {
+            runTimes[priority].record(now - grantedAt[slot]);
+            grantedAt[slot] = 0;
+        }
+        AtomicLongArray since = busySince;
+        if (processor < since.length()) {
+            long start = since.getAndSet(processor, 0);
+            if (start != 0) {
+                busyNanos.addAndGet(processor, now - start);
+            }
+        }
+    }
+
+    void onEmptySignal() {
+        emptySignals.increment();
+    }
+
+    void onLockContended() {
+        lockContentions.increment();
+    }
+
+    // Turned away by admission control; a shed process was queued and is
+    // also reported through onWithdrawn
+    void onRejected(boolean shed) {
+        (shed ? sheds : rejections).increment();
+    }
+
+    @Override
+    public long getDispatchCount() {
+        return dispatches.sum();
+    }
+
+    @Override
+    public long getEmptySignalCount() {
+        return emptySignals.sum();
+    }
+
+    @Override
+    public long getLockContentionCount() {
+        return lockContentions.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public long getShedCount() {
+        return sheds.sum();
+    }
+
+    @Override
+    public long[] getQueueDepths() {
+        long[] depths = new long[queueDepths.length()];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = queueDepths.get(i);
+        }
+        return depths;
+    }
+
+    // Busy fraction of each processor since creation or the last reset()
+    @Override
+    public double[] getProcessorUtilization() {
+        AtomicLongArray busy = busyNanos;
+        AtomicLongArray since = busySince;
+        long now = System.nanoTime();
+        double elapsed = Math.max(1, now - startedAt);
+        double[] utilization = new double[Math.min(busy.length(), since.length())];
+        for (int i = 0; i < utilization.length; i++) {
+            long start = since.get(i);
+            long current = start == 0 ? 0 : now - Math.max(start, startedAt);
+            utilization[i] = Math.min(1.0, (busy.get(i) + current) / elapsed);
+        }
+        return utilization;
+    }
+
+    @Override
+    public long[] getWaitTimeP50Nanos() {
+        return percentiles(waitTimes, 0.5);
+    }
+
+    @Override
+    public long[] getWaitTimeP99Nanos() {
+        return percentiles(waitTimes, 0.99);
+    }
+
+    @Override
+    public long[] getRunTimeP50Nanos() {
+        return percentiles(runTimes, 0.5);
+    }
+
+    @Override
+    public long[] getRunTimeP99Nanos() {
+        return percentiles(runTimes, 0.99);
+    }
+
+    @Override
+    public long waitTimePercentileNanos(int priority, double fraction) {
+        return waitTimes[priority].percentileNanos(fraction);
+    }
+
+    @Override
+    public long runTimePercentileNanos(int priority, double fraction) {
+        return runTimes[priority].percentileNanos(fraction);
+    }
+
+    // Clears histograms, counters and utilisation; queue depths are live gauges
+    // and stay. Busy processors count as busy from the reset on.
+    @Override
+    public void reset() {
+        long now = System.nanoTime();
+        for (int i = 0; i < waitTimes.length; i++) {
+            waitTimes[i].reset();
+            runTimes[i].reset();
+        }
+        dispatches.reset();
+        emptySignals.reset();
+        lockContentions.reset();
+        rejections.reset();
+        sheds.reset();
+        AtomicLongArray busy = busyNanos;
+        AtomicLongArray since = busySince;
+        for (int i = 0; i < busy.length(); i++) {
+            busy.set(i, 0);
+        }
+        for (int i = 0; i < since.length(); i++) {
+            since.getAndUpdate(i, start -> start == 0 ? 0 : now);
+        }
+        startedAt = now;
+    }
+
+    private long[] percentiles(LatencyHistogram[] histograms, double fraction) {
+        long[] values = new long[histograms.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histograms[i].percentileNanos(fraction);
+        }
+        return values;
+    }
+
+    private void ensureSlot(int slot) {
+        if (slot >= enqueuedAt.length) {
+            int length = Math.max(slot + 1, enqueuedAt.length * 2);
+            enqueuedAt = Arrays.copyOf(enqueuedAt, length);
+            grantedAt = Arrays.copyOf(grantedAt, length);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+// JMX view of SchedulerMetrics. Array attributes are indexed by priority
+// level or by processor; times are in nanoseconds.
+public interface SchedulerMetricsMXBean {
+
+	public long getDispatchCount();
+
+	public long getEmptySignalCount();
+
+	public long getLockContentionCount();
+
+	public long getRejectedCount();
+
+	public long getShedCount();
+
+	public long[] getQueueDepths();
+
+	public double[] getProcessorUtilization();
+
+	public long[] getWaitTimeP50Nanos();
+
+	public long[] getWaitTimeP99Nanos();
+
+	public long[] getRunTimeP50Nanos();
+
+	public long[] getRunTimeP99Nanos();
+
+	public long waitTimePercentileNanos(int priority, double fraction);
+
+	public long runTimePercentileNanos(int priority, double fraction);
+
+	public void reset();
+
+}
@@ -0,0 +1,24 @@
+// One scheduler instance behind ShardedOS: OS in the same JVM, or RemoteShard
+// for an OS served by ShardServer in another local process. Beyond
+// OS_sim_interface it lets the balancer read load and move queued processes.
+public interface SchedulerShard extends OS_sim_interface {
+
+    // start(ID), returning false instead of a processor if withdrawQueued()
+    // took the process off the queue while it waited
+    boolean startUnlessWithdrawn(int ID);
+
+    // schedule(ID), returning false if the process was withdrawn while queued
+    boolean scheduleUnlessWithdrawn(int ID);
+
+    // Queues or grants processors to the processes without blocking; their
+    // start() then just waits for the grant
+    void startAll(int... ids);
+
+    // Takes up to max processes off the queue, most urgent first, and returns
+    // their PIDs; their pending start()/schedule() calls return as withdrawn
+    int[] withdrawQueued(int max);
+
+    int queuedCount();
+
+    int freeProcessors();
+}
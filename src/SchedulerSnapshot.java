@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// A consistent copy of an OS's scheduling state: the process table (priorities,
+// assigned processors, states, PID generations and the free list), the queue
+// in poll order and the processor count. OS.snapshot() takes one with a brief
+// copy under the scheduler lock; write() then serialises it without holding
+// anything, and OS.restore() rebuilds a scheduler from it. Threads are not part
+// of the state: after a restore each process's thread calls start(ID) if it was
+// queued or carries on with schedule(ID)/terminate(ID) if it was running.
+//
+// File layout, little-endian: a 24-byte header
+//   int magic "OSSN", int version, int priority levels, int processors,
+//   int queued count, int reserved
+// then the queued PIDs and the process table columns (slot count, free head,
+// live count, int priorities, processors, generations, free-list links and a
+// byte of state per slot). write() goes through a temporary file and an atomic
+// rename, so a crash mid-checkpoint leaves the previous one intact; read() maps
+// the file and copies the columns out in bulk.
+public final class SchedulerSnapshot {
+    static final int MAGIC = 0x4E53534F; // "OSSN"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    private final int levels;
+    private final int processors;
+    private final ProcessTable processTable;
+    private final int[] queue;
+
+    SchedulerSnapshot(int levels, int processors, ProcessTable processTable, int[] queue) {
+        this.levels = levels;
+        this.processors = processors;
+        this.processTable = processTable;
+        this.queue = queue;
+    }
+
+    public int levels() {
+        return levels;
+    }
+
+    public int processors() {
+        return processors;
+    }
+
+    public int liveProcesses() {
+        return processTable.liveCount();
+    }
+
+    public int queuedProcesses() {
+        return queue.length;
+    }
+
+    ProcessTable processTable() {
+        return processTable;
+    }
+
+    int[] queue() {
+        return queue;
+    }
+
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long bytes = HEADER_BYTES + queue.length * 4L + processTable.serializedBytes();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(levels).putInt(processors).putInt(queue.length).putInt(0);
+            out.asIntBuffer().put(queue);
+            out.position(out.position() + queue.length * 4);
+            processTable.writeTo(out);
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SchedulerSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a scheduler snapshot: " + file);
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " scheduler snapshot: " + file);
+            }
+            int levels = in.getInt();
+            int processors = in.getInt();
+            int queued = in.getInt();
+            in.getInt();
+            try {
+                int[] queue = new int[queued];
+                in.asIntBuffer().get(queue);
+                in.position(in.position() + queued * 4);
+                return new SchedulerSnapshot(levels, processors, ProcessTable.readFrom(in), queue);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt scheduler snapshot: " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Decides which ready process gets the next free processor and whether a
+// yielding process should give its processor up. OS and DiscreteEventSimulator
+// own the process table and processors and call in here under their own lock,
+// so implementations need not be thread-safe. Processes are passed as PID plus
+// process table slot (dense, reused after terminate) so policies can keep
+// per-process state in arrays. `now` is nanoTime for OS and the virtual clock
+// for the simulator.
+public interface SchedulingPolicy {
+
+    // Number of priority levels accepted, 0 being the most urgent
+    int levels();
+
+    int size();
+
+    boolean isEmpty();
+
+    // The process is ready and waiting for a processor
+    void enqueue(int pid, int slot, int priority, long now);
+
+    // Removes and returns the process to run next, or -1 when none is ready
+    int poll(long now);
+
+    // Withdraws a queued process; returns false if it was not queued
+    boolean remove(int pid, int slot, int priority);
+
+    // Whether a running process that calls schedule() should give way. When
+    // true the caller is enqueued and poll() picks the next process, which may
+    // be the caller itself.
+    boolean shouldYield(int pid, int slot, int priority, long now);
+
+    // The process was granted a processor
+    default void onDispatched(int pid, int slot, int priority, long now) {
+    }
+
+    // The process gave its processor back, by yielding or terminating
+    default void onDescheduled(int pid, int slot, int priority, long now) {
+    }
+
+    // The process terminated; its slot may be reused by a new process
+    default void onTerminated(int pid, int slot) {
+    }
+
+    // Queued PIDs such that enqueuing them in this order into an empty instance
+    // of the same policy reproduces the current poll order; used for
+    // snapshots. Policies whose order depends on history they cannot replay
+    // this way do not support it.
+    default int[] queuedInOrder() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support snapshots");
+    }
+
+    // The queued process poll() would return last, -1 when none; OS sheds it
+    // first when admission control drops the lowest priority. Defaults to
+    // the end of queuedInOrder().
+    default int last() {
+        int[] queued = queuedInOrder();
+        return queued.length == 0 ? -1 : queued[queued.length - 1];
+    }
+
+    // Whether the policy reads `now`; if not, callers may pass 0 and skip the clock
+    default boolean usesClock() {
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serves one SchedulerShard (an OS by default) on a Unix domain socket so a
+// ShardedOS in another local process can use it through RemoteShard.
+//
+// Requests are 12 bytes: int request id, int operation, int argument.
+// Responses are int request id, int status (0 ok, 1 failed), int length,
+// then `length` ints of result or, on failure, `length` bytes of UTF-8 error
+// message. Calls that may block (start and schedule) run on their own thread
+// so one connection can carry any number of waiting processes; responses
+// are written in completion order and matched by id.
+//
+// Usage: java ShardServer <socket path> [processors=1] [priority levels=140]
+public class ShardServer implements AutoCloseable {
+    static final int SET_PROCESSORS = 0;
+    static final int REG = 1;
+    static final int START = 2;
+    static final int SCHEDULE = 3;
+    static final int TERMINATE = 4;
+    static final int START_UNLESS_WITHDRAWN = 5;
+    static final int SCHEDULE_UNLESS_WITHDRAWN = 6;
+    static final int ADMIT = 7;
+    static final int WITHDRAW_QUEUED = 8;
+    static final int QUEUED_COUNT = 9;
+    static final int FREE_PROCESSORS = 10;
+    static final int REQUEST_BYTES = 12;
+    static final int RESPONSE_HEADER_BYTES = 12;
+
+    private final SchedulerShard shard;
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ThreadFactory threads;
+    private final Thread acceptor;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public ShardServer(Path socket, SchedulerShard shard) throws IOException {
+        this.shard = shard;
+        this.socket = socket;
+        this.threads = ProcessRuntime.defaultThreadFactory();
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        acceptor = new Thread(this::acceptLoop, "shard-server " + socket.getFileName());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // The socket path clients connect to
+    public Path socket() {
+        return socket;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java ShardServer <socket path> [processors=1] [priority levels=140]");
+            System.exit(2);
+        }
+        OS os = new OS(args.length > 2 ? Integer.parseInt(args[2]) : OS.DEFAULT_PRIORITY_LEVELS);
+        os.set_number_of_processors(args.length > 1 ? Integer.parseInt(args[1]) : 1);
+        ShardServer server = new ShardServer(Path.of(args[0]), os);
+        System.out.println("Serving shard on " + args[0]);
+        server.acceptor.join();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                Thread reader = new Thread(() -> serve(channel), "shard-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Shard server on " + socket + " stopped accepting: " + e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        ReentrantLock writeLock = new ReentrantLock();
+        ByteBuffer request = ByteBuffer.allocate(REQUEST_BYTES);
+        connections.add(channel);
+        try (channel) {
+            // Accepted just as close() went through the connections
+            if (closed) {
+                return;
+            }
+            while (true) {
+                request.clear();
+                readFully(channel, request);
+                int id = request.getInt(0);
+                int operation = request.getInt(4);
+                int argument = request.getInt(8);
+                if (operation == START || operation == SCHEDULE || operation == START_UNLESS_WITHDRAWN
+                        || operation == SCHEDULE_UNLESS_WITHDRAWN) {
+                    threads.newThread(() -> respond(channel, writeLock, id, operation, argument)).start();
+                } else {
+                    respond(channel, writeLock, id, operation, argument);
+                }
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            // Client went away
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Shard connection failed: " + e);
+            }
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    private void respond(SocketChannel channel, ReentrantLock writeLock, int id, int operation, int argument) {
+        ByteBuffer response;
+        try {
+            int[] result = execute(operation, argument);
+            response = ByteBuffer.allocate(RESPONSE_HEADER_BYTES + result.length * 4);
+            response.putInt(id).putInt(0).putInt(result.length);
+            for (int value : result) {
+                response.putInt(value);
+            }
+        } catch (RuntimeException e) {
+            byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            response = ByteBuffer.allocate(RESPONSE_HEADER_BYTES + message.length);
+            response.putInt(id).putInt(1).putInt(message.length).put(message);
+        }
+        response.flip();
+        writeLock.lock();
+        try {
+            while (response.hasRemaining()) {
+                channel.write(response);
+            }
+        } catch (IOException e) {
+            // The client is gone; nobody is waiting for this answer
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int[] execute(int operation, int argument) {
+        switch (operation) {
+            case SET_PROCESSORS -> shard.set_number_of_processors(argument);
+            case REG -> {
+                return new int[] {shard.reg(argument)};
+            }
+            case START -> shard.start(argument);
+            case SCHEDULE -> shard.schedule(argument);
+            case TERMINATE -> shard.terminate(argument);
+            case START_UNLESS_WITHDRAWN -> {
+                return new int[] {shard.startUnlessWithdrawn(argument) ? 1 : 0};
+            }
+            case SCHEDULE_UNLESS_WITHDRAWN -> {
+                return new int[] {shard.scheduleUnlessWithdrawn(argument) ? 1 : 0};
+            }
+            case ADMIT -> shard.startAll(argument);
+            case WITHDRAW_QUEUED -> {
+                return shard.withdrawQueued(argument);
+            }
+            case QUEUED_COUNT -> {
+                return new int[] {shard.queuedCount()};
+            }
+            case FREE_PROCESSORS -> {
+                return new int[] {shard.freeProcessors()};
+            }
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+        return new int[0];
+    }
+
+    static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    // Also drops every open connection, as a server process exiting would
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (SocketChannel channel : connections) {
+            channel.close();
+        }
+        Files.deleteIfExists(socket);
+    }
+}
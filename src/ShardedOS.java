@@ -0,0 +1,327 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// OS_sim_interface over N independent scheduler shards, each with its own
+// lock, queue and processors, so throughput grows with the shard count. A PID
+// carries its home shard in the top bits and a per-shard sequence number in
+// the rest; the home shard keeps the PID's routing entry. reg() places a new
+// process on the shard with the fewest live processes per processor.
+//
+// A background balancer moves queued processes from shards with a backlog to
+// shards with idle processors: it withdraws the most urgent waiters from the
+// busy shard, registers and admits them on the idle one and repoints their
+// routes. The waiting thread's start()/schedule() on the old shard returns as
+// withdrawn, and it carries on waiting on the new shard. A waiter the idle
+// shard fails to take is re-admitted on its old shard; if that fails too, its
+// start()/schedule() throws, as does any later one, and it can only be
+// terminated.
+// Running processes never move. Priority is strict within a shard only;
+// across shards a process can run while a more urgent one waits elsewhere
+// until the next balancing pass.
+//
+// Shards are OS instances by default, or any SchedulerShard, e.g. RemoteShard
+// clients of ShardServer processes on the same machine.
+public class ShardedOS implements OS_sim_interface, AutoCloseable {
+    public static final long DEFAULT_BALANCE_INTERVAL_NANOS = 1_000_000;
+
+    private static final class Shard {
+        final SchedulerShard scheduler;
+        final int index;
+        final AtomicInteger sequence = new AtomicInteger();
+        final AtomicInteger live = new AtomicInteger();
+        // Routing entries of processes whose home is this shard, by global PID
+        final ConcurrentHashMap<Integer, Process> homed = new ConcurrentHashMap<>();
+        // Processes currently registered here, by this shard's own PID
+        final ConcurrentHashMap<Integer, Process> byLocal = new ConcurrentHashMap<>();
+        volatile int processors;
+
+        Shard(SchedulerShard scheduler, int index) {
+            this.scheduler = scheduler;
+            this.index = index;
+        }
+    }
+
+    // Where a process lives; replaced when it migrates
+    private static final class Route {
+        final Shard shard;
+        final int local;
+        final CountDownLatch moved = new CountDownLatch(1);
+        volatile Route next;
+        // Set instead of next when the withdrawn process could not be re-admitted
+        volatile RuntimeException failure;
+
+        Route(Shard shard, int local) {
+            this.shard = shard;
+            this.local = local;
+        }
+    }
+
+    private static final class Process {
+        final int pid;
+        final int priority;
+        volatile Route route;
+
+        Process(int pid, int priority) {
+            this.pid = pid;
+            this.priority = priority;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int sequenceBits;
+    private final int sequenceMask;
+    private final AtomicInteger migrations = new AtomicInteger();
+    private final Thread balancer;
+    private volatile long balanceIntervalNanos = DEFAULT_BALANCE_INTERVAL_NANOS;
+    private volatile boolean closed;
+
+    // One OS shard per available CPU
+    public ShardedOS() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedOS(int shardCount) {
+        this(newShards(shardCount));
+    }
+
+    public ShardedOS(SchedulerShard... schedulers) {
+        if (schedulers.length == 0 || schedulers.length > 256) {
+            throw new IllegalArgumentException("Need 1 to 256 shards: " + schedulers.length);
+        }
+        shards = new Shard[schedulers.length];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(schedulers[i], i);
+        }
+        sequenceBits = 31 - (32 - Integer.numberOfLeadingZeros(Math.max(1, shards.length - 1)));
+        sequenceMask = (1 << sequenceBits) - 1;
+        balancer = new Thread(this::balanceLoop, "shard-balancer");
+        balancer.setDaemon(true);
+        balancer.start();
+    }
+
+    private static SchedulerShard[] newShards(int count) {
+        SchedulerShard[] shards = new SchedulerShard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new OS();
+        }
+        return shards;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // Home shard encoded in a PID
+    public int homeShard(int ID) {
+        return ID >>> sequenceBits;
+    }
+
+    // Shard the process is registered on now, which differs from its home
+    // shard once it has migrated
+    public int currentShard(int ID) {
+        return process(ID).route.shard.index;
+    }
+
+    public int migrations() {
+        return migrations.get();
+    }
+
+    public void setBalanceInterval(long nanos) {
+        balanceIntervalNanos = nanos;
+        LockSupport.unpark(balancer);
+    }
+
+    // Splits the processors over the shards as evenly as possible
+    @Override
+    public void set_number_of_processors(int nProcessors) {
+        for (Shard shard : shards) {
+            int share = nProcessors / shards.length + (shard.index < nProcessors % shards.length ? 1 : 0);
+            shard.processors = share;
+            shard.scheduler.set_number_of_processors(share);
+        }
+    }
+
+    @Override
+    public int reg(int priority) {
+        Shard home = leastLoaded();
+        int local = home.scheduler.reg(priority);
+        int pid;
+        Process process;
+        do {
+            pid = (home.index << sequenceBits) | (home.sequence.getAndIncrement() & sequenceMask);
+            process = new Process(pid, priority);
+        } while (home.homed.putIfAbsent(pid, process) != null);
+        process.route = new Route(home, local);
+        home.byLocal.put(local, process);
+        home.live.incrementAndGet();
+        return pid;
+    }
+
+    // Fewest live processes per processor; shards without processors last
+    private Shard leastLoaded() {
+        Shard best = shards[0];
+        long bestLoad = Long.MAX_VALUE;
+        for (Shard shard : shards) {
+            long load = shard.processors == 0 ? Long.MAX_VALUE - 1
+                    : ((long) shard.live.get() << 16) / shard.processors;
+            if (load < bestLoad) {
+                best = shard;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void start(int ID) {
+        Process process = process(ID);
+        Route route = process.route;
+        follow(route, route.shard.scheduler.startUnlessWithdrawn(route.local));
+    }
+
+    @Override
+    public void schedule(int ID) {
+        Process process = process(ID);
+        Route route = process.route;
+        follow(route, route.shard.scheduler.scheduleUnlessWithdrawn(route.local));
+    }
+
+    // Keeps waiting on the shard the process was moved to until it runs
+    private void follow(Route route, boolean running) {
+        while (!running) {
+            try {
+                route.moved.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (route.failure != null) {
+                throw new IllegalStateException("Process was withdrawn for migration and could not be re-admitted",
+                        route.failure);
+            }
+            route.shard.scheduler.terminate(route.local);
+            route = route.next;
+            running = route.shard.scheduler.startUnlessWithdrawn(route.local);
+        }
+    }
+
+    @Override
+    public void terminate(int ID) {
+        Process process = process(ID);
+        Route route = process.route;
+        route.shard.scheduler.terminate(route.local);
+        route.shard.byLocal.remove(route.local);
+        route.shard.live.decrementAndGet();
+        shards[homeShard(ID)].homed.remove(ID);
+    }
+
+    private Process process(int ID) {
+        int home = homeShard(ID);
+        Process process = home < shards.length ? shards[home].homed.get(ID) : null;
+        if (process == null) {
+            throw new IllegalArgumentException("Unknown or terminated process " + ID);
+        }
+        return process;
+    }
+
+    // One balancing pass: each shard with idle processors and nothing queued
+    // takes waiters from the shard with the longest queue
+    public void rebalance() {
+        for (Shard idle : shards) {
+            int free = idle.scheduler.freeProcessors();
+            if (free == 0 || idle.scheduler.queuedCount() > 0) {
+                continue;
+            }
+            Shard busiest = null;
+            int longest = 0;
+            for (Shard shard : shards) {
+                if (shard != idle && shard.scheduler.freeProcessors() == 0) {
+                    int queued = shard.scheduler.queuedCount();
+                    if (queued > longest) {
+                        busiest = shard;
+                        longest = queued;
+                    }
+                }
+            }
+            if (busiest != null) {
+                migrate(busiest, idle, Math.min(free, longest));
+            }
+        }
+    }
+
+    // Every withdrawn process ends up queued on `to` or back on `from`, or its
+    // waiting call fails; the first failure is rethrown once all are placed
+    private void migrate(Shard from, Shard to, int count) {
+        RuntimeException failure = null;
+        for (int local : from.scheduler.withdrawQueued(count)) {
+            Process process = from.byLocal.get(local);
+            Route old = process.route;
+            Route route;
+            try {
+                route = admit(to, process);
+                to.live.incrementAndGet();
+                from.live.decrementAndGet();
+                migrations.incrementAndGet();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                try {
+                    route = admit(from, process);
+                } catch (RuntimeException again) {
+                    e.addSuppressed(again);
+                    // Withdrawn on `from`, which only terminate() undoes; the
+                    // route keeps failing every later start()/schedule()
+                    old.failure = e;
+                    old.moved.countDown();
+                    continue;
+                }
+            }
+            from.byLocal.remove(local);
+            old.next = route;
+            process.route = route;
+            old.moved.countDown();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Registers the process on the shard and queues it there, unregistering
+    // it again if it cannot be queued
+    private Route admit(Shard shard, Process process) {
+        int local = shard.scheduler.reg(process.priority);
+        try {
+            shard.scheduler.startAll(local);
+        } catch (RuntimeException e) {
+            try {
+                shard.scheduler.terminate(local);
+            } catch (RuntimeException again) {
+                e.addSuppressed(again);
+            }
+            throw e;
+        }
+        shard.byLocal.put(local, process);
+        return new Route(shard, local);
+    }
+
+    private void balanceLoop() {
+        while (!closed) {
+            try {
+                rebalance();
+            } catch (RuntimeException e) {
+                // A shard may be unreachable for a moment; try again next pass
+            }
+            LockSupport.parkNanos(this, balanceIntervalNanos);
+        }
+    }
+
+    // Stops the balancer; shards are left as they are
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(balancer);
+    }
+}
@@ -0,0 +1,10 @@
+// What OS admission control does when a process arrives at a full ready
+// queue (see OS.setQueueCapacity). A full priority level always refuses the
+// newcomer, as shedding another level would not make room in it.
+public enum ShedPolicy {
+    // Refuse the arriving process; those already queued keep their places
+    REJECT_NEWEST,
+    // Shed the queued process that would run last if it is less urgent than
+    // the arriving one, otherwise refuse the arriving process
+    DROP_LOWEST_PRIORITY
+}
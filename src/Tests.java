@@ -84,8 +84,8 @@ public class Tests {
 	class ProcessSimThread2 extends Thread {
 		int pid = -1;
 		int start_session_length=0;
-		OS os;
-		ProcessSimThread2(OS os){this.os = os;} //Constructor stores reference to os for use in run()
+		OS_sim_interface os;
+		ProcessSimThread2(OS_sim_interface os){this.os = os;} //Constructor stores reference to os for use in run()
 		
 		public void run(){
 
@@ -104,12 +104,15 @@ public class Tests {
 		};	
 	};	
 	
-public void ur2_example_test(){
+public void ur2_example_test() {
+	ur2_example_test(new OS());
+}
+
+public void ur2_example_test(OS_sim_interface os) {
 		
 		System.out.println("\n\n\n***** UR2 *****");		
 		events = new ConcurrentLinkedQueue<String>(); 
 		
-		OS os =  new OS();	
 		int priority1 = 1;
 
 		int pid0 = os.reg(priority1); 
@@ -145,11 +148,14 @@ public void ur2_example_test(){
 		System.out.println("\n" + test_status);	
 	}
 	
-	public void ur3_example_test(){
+	public void ur3_example_test() {
+	ur3_example_test(new OS());
+}
+
+public void ur3_example_test(OS_sim_interface os) {
 	    System.out.println("\n\n\n*********** UR3 *************");     
 	    events = new ConcurrentLinkedQueue<>();
 	    
-	    OS os = new OS();   
 	    int priority1 = 1;
 	    
 	    int pid0 = os.reg(priority1); 
@@ -200,14 +206,17 @@ public void ur2_example_test(){
 	}
 
 	
-public void ur4_example_test(){
+public void ur4_example_test() {
+	ur4_example_test(new OS());
+}
+
+public void ur4_example_test(OS_sim_interface os) {
 		
 		
 		System.out.println("\n\n\n***** UR4 *****");
 		events = new ConcurrentLinkedQueue<String>(); //List of process events
 		
 		//Instantiate OS simulation for two processors
-		OS os =  new OS();	
 		os.set_number_of_processors(2);
 		int priority1 = 1;
 		
@@ -262,10 +271,13 @@ public void ur4_example_test(){
 	}
 
 public void ur5_example_test() {
+	ur5_example_test(new OS());
+}
+
+public void ur5_example_test(OS_sim_interface os) {
 	System.out.println("\n\n\n*********** UR5 *************");     
     events = new ConcurrentLinkedQueue<>();
     
-    OS os = new OS(); 
     os.set_number_of_processors(1);
     int priority1 = 10;
     int priority2 = 20;
@@ -315,11 +327,14 @@ public void ur5_example_test() {
     System.out.println("\n" + test_status);   
 	}
 public void ur6_example_test() {
+	ur6_example_test(new OS());
+}
+
+public void ur6_example_test(OS_sim_interface os) {
 	System.out.println("\n\n\n***** UR6 *****");
 	events = new ConcurrentLinkedQueue<String>(); // List of process events
 
 	// Instantiate OS simulation for single processor
-	OS os = new OS();
 	os.set_number_of_processors(2);
 
 	int pid0 = os.reg(10);
@@ -380,6 +395,10 @@ public void ur6_example_test() {
 }
 
 public void ur6_example_test2() {
+	ur6_example_test2(new OS());
+}
+
+public void ur6_example_test2(OS_sim_interface os) {
 	/***
 	 * 
 	 * UR6   Multiple Processes, Multiple Processors, Multiple Priority Queues
@@ -399,7 +418,6 @@ public void ur6_example_test2() {
 	events = new ConcurrentLinkedQueue<String>(); //List of process events
 	
 	//Instantiate OS simulation for two processors
-	OS os =  new OS();	
 	os.set_number_of_processors(2);
 	int priority1 = 10;
 	int priority2 = 20;
@@ -462,4 +480,1618 @@ public void ur6_example_test2() {
 
 	System.out.println("\n" + test_status);
 }
+
+public void process_runtime_example_test() {
+	System.out.println("\n\n\n***** PROCESS RUNTIME *****");
+	OS_sim_interface os = new ConcurrentOS();
+	os.set_number_of_processors(4);
+	int nProcesses = 10000;
+	java.util.concurrent.atomic.AtomicInteger sessions = new java.util.concurrent.atomic.AtomicInteger();
+
+	ProcessRuntime runtime = new ProcessRuntime(os);
+	for (int i = 0; i < nProcesses; i++) {
+		runtime.spawn(i % 10, process -> {
+			sessions.incrementAndGet();
+			process.schedule();
+			sessions.incrementAndGet();
+			process.schedule();
+			sessions.incrementAndGet();
+		});
+	}
+	try {runtime.awaitCompletion();} catch (InterruptedException e) {e.printStackTrace();}
+
+	System.out.println("Virtual threads: " + ProcessRuntime.virtualThreadsAvailable()
+			+ ", sessions expected = " + (3 * nProcesses) + ", sessions run = " + sessions.get()
+			+ ", failures = " + runtime.failureCount());
+	if (sessions.get() == 3 * nProcesses && runtime.failureCount() == 0) System.out.println("\nPROCESS RUNTIME PASSED");
+	else System.out.println("\nPROCESS RUNTIME FAILED");
+}
+
+public void batch_start_example_test() {
+	System.out.println("\n\n\n***** BATCH START *****");
+	OS os = new OS();
+	os.set_number_of_processors(8);
+	int nProcesses = 2000;
+	int[] priorities = new int[nProcesses];
+	for (int i = 0; i < nProcesses; i++) priorities[i] = i % 10;
+
+	int first = os.regBatch(priorities);
+	os.startRange(first, nProcesses);
+
+	java.util.concurrent.atomic.AtomicInteger finished = new java.util.concurrent.atomic.AtomicInteger();
+	Thread[] threads = new Thread[nProcesses];
+	for (int i = 0; i < nProcesses; i++) {
+		int pid = first + i;
+		threads[i] = new Thread(() -> {os.start(pid); os.schedule(pid); os.terminate(pid); finished.incrementAndGet();});
+		threads[i].start();
+	}
+	for (Thread thread : threads) {try {thread.join(test_timeout * 10);} catch (InterruptedException e) {e.printStackTrace();}}
+
+	System.out.println("First pid = " + first + ", processes expected = " + nProcesses + ", processes finished = " + finished.get());
+	String test_status = first == 0 && finished.get() == nProcesses ? "BATCH START PASSED" : "BATCH START FAILED";
+
+	// Processes registered one by one and granted by startAll before their
+	// threads have waited, past the initial 16 per-slot waiters
+	OS single = new OS();
+	single.set_number_of_processors(20);
+	int[] ids = new int[24];
+	for (int i = 0; i < ids.length; i++) ids[i] = single.reg(i < 20 ? 0 : 24 - i);
+	java.util.List<Integer> order = java.util.Collections.synchronizedList(new ArrayList<Integer>());
+	single.setEventSink((event, pid, priority, processor) -> { if (event == SchedulerEvent.ALLOCATED && priority > 0) order.add(pid); });
+	try {
+		single.startAll(ids);
+		ArrayList<Thread> queued = new ArrayList<Thread>();
+		for (int i = 20; i < ids.length; i++) {
+			int pid = ids[i];
+			Thread thread = new Thread(() -> { single.start(pid); single.terminate(pid); });
+			thread.start();
+			queued.add(thread);
+		}
+		for (int i = 0; i < 20; i++) {
+			single.start(ids[i]);
+			single.terminate(ids[i]);
+		}
+		for (Thread thread : queued) thread.join(test_timeout);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "BATCH START FAILED";
+	}
+	// The four queued processes have priorities 4, 3, 2 and 1 and run most urgent first
+	System.out.println("startAll over 24 reg()'d processes, queued ones ran in order " + order);
+	if (!order.equals(java.util.Arrays.asList(ids[23], ids[22], ids[21], ids[20]))) test_status = "BATCH START FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void async_example_test() {
+	System.out.println("\n\n\n***** ASYNC START *****");
+	String test_status = "ASYNC START PASSED";
+	OS os = new OS();
+	os.set_number_of_processors(2);
+	// One event-loop thread drives every process; none of them owns a thread
+	java.util.concurrent.ExecutorService loop = java.util.concurrent.Executors.newSingleThreadExecutor();
+	os.setAsyncExecutor(loop);
+	int nProcesses = 40;
+	java.util.concurrent.CompletableFuture<?>[] done = new java.util.concurrent.CompletableFuture<?>[nProcesses];
+	java.util.concurrent.atomic.AtomicInteger sessions = new java.util.concurrent.atomic.AtomicInteger();
+	java.util.List<Integer> firstRuns = java.util.Collections.synchronizedList(new ArrayList<Integer>());
+
+	// Two processes hold both processors while the others queue behind them
+	int[] holders = { os.reg(0), os.reg(0) };
+	for (int holder : holders) {
+		if (!os.startAsync(holder).isDone()) test_status = "ASYNC START FAILED";
+	}
+	int[] pids = new int[nProcesses];
+	for (int i = 0; i < nProcesses; i++) {
+		int pid = pids[i] = os.reg(1 + i % 10);
+		done[i] = os.startAsync(pid)
+				.thenCompose(processor -> {firstRuns.add(pid); sessions.incrementAndGet(); return os.yieldAsync(pid);})
+				.thenCompose(processor -> {sessions.incrementAndGet(); return os.yieldAsync(pid);})
+				.thenRun(() -> {sessions.incrementAndGet(); os.terminate(pid);});
+	}
+	int pending = os.queuedCount();
+	// Released on the loop too, so every callback runs in one deterministic order
+	loop.execute(() -> { for (int holder : holders) os.terminate(holder); });
+	try {
+		java.util.concurrent.CompletableFuture.allOf(done).get(test_timeout * 10, java.util.concurrent.TimeUnit.MILLISECONDS);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "ASYNC START FAILED";
+	}
+	loop.shutdown();
+
+	// A process of a less urgent level never starts while a more urgent one
+	// waits, and yielding peers keep FIFO order within a level
+	ArrayList<Integer> expected = new ArrayList<Integer>();
+	for (int level = 0; level < 10; level++) {
+		for (int i = level; i < nProcesses; i += 10) expected.add(pids[i]);
+	}
+	System.out.println("Pending at once = " + pending + ", sessions expected = " + (3 * nProcesses) + ", sessions run = " + sessions.get());
+	System.out.println("First runs: " + firstRuns);
+	if (pending != nProcesses || sessions.get() != 3 * nProcesses || !firstRuns.equals(expected)) test_status = "ASYNC START FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void discrete_event_example_test() {
+	System.out.println("\n\n\n***** DISCRETE EVENT (UR5 on a virtual clock) *****");
+	events = new ConcurrentLinkedQueue<String>();
+
+	// Same processes as ur5_example_test: sessions of 150/0/0 and 0/0/0 time units
+	DiscreteEventSimulator sim = new DiscreteEventSimulator(1, OS.DEFAULT_PRIORITY_LEVELS);
+	sim.setSessionListener((time, pid, session) -> events.add("pid=" + pid + ", session=" + session));
+	sim.addProcess(0, 10, 150, 0, 0);
+	sim.addProcess(50, 10, 0, 0, 0);
+	sim.addProcess(100, 20, 0, 0, 0);
+	sim.run();
+
+	String[] expected = { "pid=0, session=0", "pid=1, session=0", "pid=0, session=1", "pid=1, session=1", "pid=0, session=2", "pid=1, session=2", "pid=2, session=0", "pid=2, session=1", "pid=2, session=2"};
+	String test_status = String.join("|", expected).equals(String.join("|", events)) ? "DISCRETE EVENT PASSED" : "DISCRETE EVENT FAILED";
+	System.out.println("Expected events = " + String.join("; ", expected) + "\nActual events   = " + String.join("; ", events));
+
+	// Capacity-planning sized run: seeded, so the result is identical every time
+	DiscreteEventSimulator load = new DiscreteEventSimulator(64, OS.DEFAULT_PRIORITY_LEVELS);
+	load.addRandomWorkload(42, 200000, 1.0, 50.0, 3, 10);
+	long started = System.nanoTime();
+	DiscreteEventSimulator.Result result = load.run();
+	double seconds = (System.nanoTime() - started) / 1e9;
+	System.out.println(result + String.format(", %.1f million events/s", result.events / seconds / 1e6));
+	if (result.completed != 200000) test_status = "DISCRETE EVENT FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void policy_example_test() {
+	System.out.println("\n\n\n***** SCHEDULING POLICIES *****");
+	String test_status = "POLICIES PASSED";
+	long ms = 1_000_000;
+	SchedulingPolicy[] policies = { new PriorityPolicy(10), new MlfqPolicy(10), new CfsPolicy(10), new LotteryPolicy(10, 42), new EdfPolicy(10) };
+	for (SchedulingPolicy policy : policies) {
+		// Fairness: two CPU-bound processes of priority 4 and 5 share one processor for 200ms
+		DiscreteEventSimulator sim = new DiscreteEventSimulator(1, 10);
+		sim.setSchedulingPolicy(policy);
+		long[] sessions = new long[1000];
+		java.util.Arrays.fill(sessions, ms);
+		sim.addProcess(0, 4, sessions);
+		sim.addProcess(0, 5, sessions);
+		DiscreteEventSimulator.Result result = sim.run(200 * ms);
+		double share = (double) result.cpuTimeByPriority[5] / (result.cpuTimeByPriority[4] + result.cpuTimeByPriority[5]);
+		System.out.println(policy.getClass().getSimpleName() + ": priority 5 got " + String.format("%.3f", share) + " of the processor");
+		boolean starves = policy instanceof PriorityPolicy;
+		if (starves ? share != 0 : share <= 0 || share > 0.5) test_status = "POLICIES FAILED";
+	}
+
+	// Threaded: the same policies driving OS with more processes than processors
+	java.util.List<java.util.function.IntFunction<SchedulingPolicy>> factories = java.util.Arrays.asList(MlfqPolicy::new, CfsPolicy::new, LotteryPolicy::new, EdfPolicy::new);
+	for (java.util.function.IntFunction<SchedulingPolicy> factory : factories) {
+		OS os = new OS();
+		os.set_number_of_processors(2);
+		SchedulingPolicy policy = factory.apply(10);
+		String name = policy.getClass().getSimpleName();
+		try {
+			os.setSchedulingPolicy(policy);
+			ProcessRuntime runtime = new ProcessRuntime(os);
+			for (int i = 0; i < 8; i++) {
+				runtime.spawn(i % 10, process -> {
+					for (int n = 0; n < 20; n++) {
+						process.schedule();
+					}
+				});
+			}
+			runtime.awaitCompletion();
+			if (runtime.failureCount() > 0) test_status = "POLICIES FAILED";
+		} catch (Exception e) {
+			System.out.println(name + ": " + e);
+			test_status = "POLICIES FAILED";
+		}
+	}
+
+	// Switching policy while processes run: the new policy learns of them,
+	// including those in slots past its initial per-slot arrays
+	try {
+		OS os = new OS(10);
+		os.set_number_of_processors(20);
+		int[] running = new int[20];
+		for (int i = 0; i < running.length; i++) {
+			running[i] = os.reg(5);
+			os.start(running[i]);
+		}
+		os.setSchedulingPolicy(new CfsPolicy(10));
+		for (int pid : running) os.terminate(pid);
+		System.out.println("Switched to CfsPolicy with 20 processes running, then terminated them");
+		// A live process's priority must fit the new policy's levels
+		int high = os.reg(8);
+		try {
+			os.setSchedulingPolicy(new CfsPolicy(5));
+			test_status = "POLICIES FAILED";
+		} catch (IllegalStateException e) {
+			System.out.println("Refused: " + e.getMessage());
+		}
+		os.terminate(high);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "POLICIES FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void aging_example_test() {
+	System.out.println("\n\n\n***** PRIORITY AGING *****");
+	String test_status = "AGING PASSED";
+	long ms = 1_000_000;
+	long[] firstRun = new long[2];
+	for (int run = 0; run < 2; run++) {
+		// A priority-0 process arrives every millisecond and runs for one, keeping
+		// the only processor busy for 500ms; a priority-9 process arrives at 0.5ms
+		DiscreteEventSimulator sim = new DiscreteEventSimulator(1, 10);
+		AgingPolicy aging = new AgingPolicy(10, 2 * ms);
+		if (run == 1) sim.setSchedulingPolicy(aging);
+		for (int i = 0; i < 500; i++) {
+			sim.addProcess(i * ms, 0, ms);
+		}
+		int background = sim.addProcess(ms / 2, 9, ms);
+		int index = run;
+		sim.setSessionListener((time, pid, session) -> { if (pid == background) firstRun[index] = time; });
+		sim.run();
+		if (run == 1) {
+			System.out.println("Aging bound for priority 9: " + aging.agingBoundNanos(9) / ms + "ms, longest observed wait: "
+					+ aging.maxObservedWaitNanos(9) / ms + "ms");
+			if (aging.maxObservedWaitNanos(9) > aging.agingBoundNanos(9) + 2 * ms) test_status = "AGING FAILED";
+		}
+	}
+	System.out.println("Priority 9 first ran at " + firstRun[0] / ms + "ms with strict priority, " + firstRun[1] / ms + "ms with aging");
+	if (firstRun[0] < 500 * ms || firstRun[1] > 25 * ms) test_status = "AGING FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void trace_example_test() {
+	System.out.println("\n\n\n***** BINARY TRACE AND REPLAY *****");
+	String test_status = "TRACE PASSED";
+	try {
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("os-trace", ".bin");
+		ArrayList<String> published = new ArrayList<String>();
+		OS os = new OS();
+		os.set_number_of_processors(1);
+		// Small regions so the trace spans several mappings
+		TraceRecorder recorder = new TraceRecorder(file, 1024, 0);
+		os.setEventSink((event, pid, priority, processor) -> {
+			published.add(event + " " + pid + " " + priority + " " + processor);
+			recorder.publish(event, pid, priority, processor);
+		});
+		ProcessRuntime runtime = new ProcessRuntime(os);
+		for (int i = 0; i < 4; i++) {
+			runtime.spawn(1 + i / 2, process -> {
+				for (int n = 0; n < 3; n++) {
+					Thread.sleep(20);
+					process.schedule();
+				}
+			});
+			Thread.sleep(30);
+		}
+		runtime.awaitCompletion();
+		recorder.close();
+
+		ArrayList<String> read = new ArrayList<String>();
+		try (TraceReader reader = new TraceReader(file)) {
+			for (long i = 0; i < reader.size(); i++) {
+				read.add(reader.event(i) + " " + reader.pid(i) + " " + reader.priority(i) + " " + reader.processor(i));
+			}
+		}
+		System.out.println("Recorded " + published.size() + " events, read back " + read.size());
+		if (!read.equals(published)) test_status = "TRACE FAILED";
+
+		// Re-drive the same calls in recorded order against the lock-free engine:
+		// on one processor it must allocate in exactly the recorded order
+		ConcurrentOS target = new ConcurrentOS();
+		java.util.Set<Integer> ran = java.util.concurrent.ConcurrentHashMap.newKeySet();
+		TraceReplay.Report report = TraceReplay.replay(file, target, sink -> target.setEventSink((event, pid, priority, processor) -> {
+			if (event == SchedulerEvent.ALLOCATED) ran.add(pid);
+			sink.publish(event, pid, priority, processor);
+		}), 0, ProcessRuntime.defaultThreadFactory());
+		System.out.println(report);
+		if (report.processes != 4 || ran.size() != 4 || report.implicitTerminations != 0) test_status = "TRACE FAILED";
+		if (report.firstDivergence != -1 || report.replayedAllocations != report.originalAllocations) test_status = "TRACE FAILED";
+
+		// The command line takes key=value options
+		java.io.PrintStream console = System.out;
+		java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+		System.setOut(new java.io.PrintStream(captured, true));
+		try {
+			TraceReplay.main(new String[] {file.toString(), "implementation=ConcurrentOS", "speed=0"});
+		} finally {
+			System.setOut(console);
+		}
+		String printed = captured.toString().trim();
+		System.out.println("From the command line: " + printed);
+		if (!printed.contains("processes=4") || !printed.contains("firstDivergence=-1")) test_status = "TRACE FAILED";
+		try {
+			TraceReplay.main(new String[] {file.toString(), "ConcurrentOS"});
+			test_status = "TRACE FAILED";
+		} catch (IllegalArgumentException e) {
+			System.out.println("Refused a bare argument: " + e.getMessage());
+		}
+		java.nio.file.Files.delete(file);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "TRACE FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void snapshot_example_test() {
+	System.out.println("\n\n\n***** SNAPSHOT AND RESTORE *****");
+	String test_status = "SNAPSHOT PASSED";
+	try {
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("os-snapshot", ".bin");
+		OS os = new OS();
+		os.set_number_of_processors(1);
+		int p1 = os.reg(1);
+		int p2 = os.reg(3);
+		int p3 = os.reg(2);
+		os.start(p1);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int pid : new int[] {p2, p3}) {
+			Thread thread = new Thread(() -> { os.start(pid); os.terminate(pid); });
+			thread.start();
+			threads.add(thread);
+			Thread.sleep(20);
+		}
+		// P1 runs, P3 then P2 wait; checkpoint and bring the state up elsewhere
+		os.checkpoint(file);
+		OS restored = OS.restore(file);
+		ArrayList<Integer> allocated = new ArrayList<Integer>();
+		restored.setEventSink((event, pid, priority, processor) -> {
+			if (event == SchedulerEvent.ALLOCATED) allocated.add(pid);
+		});
+		for (int pid : new int[] {p2, p3}) {
+			Thread thread = new Thread(() -> { restored.start(pid); restored.terminate(pid); });
+			thread.start();
+			threads.add(thread);
+		}
+		Thread.sleep(20);
+		restored.terminate(p1);
+		os.terminate(p1);
+		for (Thread thread : threads) {
+			thread.join(test_timeout);
+		}
+		int p4 = restored.reg(0);
+		System.out.println("Restored allocation order: " + allocated + ", next PID " + p4);
+		if (!allocated.equals(java.util.Arrays.asList(p3, p2))) test_status = "SNAPSHOT FAILED";
+		if (p4 == p1 || p4 == p2 || p4 == p3) test_status = "SNAPSHOT FAILED";
+		java.nio.file.Files.delete(file);
+
+		// More queued processes than the initial per-slot arrays hold, restored
+		// with no thread waiting: the restored queue counts toward capacity, and
+		// each is granted in order once the running process terminates
+		OS many = new OS();
+		many.set_number_of_processors(1);
+		int holder = many.reg(0);
+		many.start(holder);
+		int[] queued = new int[20];
+		for (int i = 0; i < queued.length; i++) queued[i] = many.reg(2);
+		many.startAll(queued);
+		OS restoredMany = OS.restore(many.snapshot());
+		int[] capacities = new int[140];
+		java.util.Arrays.fill(capacities, 100);
+		capacities[2] = queued.length;
+		restoredMany.setQueueCapacity(capacities);
+		ArrayList<Integer> refused = new ArrayList<Integer>();
+		restoredMany.setAdmissionListener((pid, priority, shed) -> refused.add(pid));
+		int extra = restoredMany.reg(2);
+		restoredMany.tryStart(extra, 0, java.util.concurrent.TimeUnit.MILLISECONDS);
+		ArrayList<Integer> granted = new ArrayList<Integer>();
+		restoredMany.setEventSink((event, pid, priority, processor) -> {
+			if (event == SchedulerEvent.ALLOCATED) granted.add(pid);
+		});
+		restoredMany.terminate(holder);
+		for (int pid : queued) restoredMany.terminate(pid);
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (int pid : queued) expected.add(pid);
+		System.out.println("Restored " + queued.length + " queued: granted " + granted.size() + " in order " + granted.equals(expected)
+				+ ", refused " + refused);
+		if (!granted.equals(expected)) test_status = "SNAPSHOT FAILED";
+		if (!refused.equals(java.util.Arrays.asList(extra))) test_status = "SNAPSHOT FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "SNAPSHOT FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void hot_resize_example_test() {
+	System.out.println("\n\n\n***** PROCESSOR HOT-ADD AND HOT-REMOVE *****");
+	String test_status = "HOT RESIZE PASSED";
+	try {
+		OS os = new OS();
+		os.set_number_of_processors(3);
+		java.util.List<String> allocated = java.util.Collections.synchronizedList(new ArrayList<String>());
+		os.setEventSink((event, pid, priority, processor) -> {
+			if (event == SchedulerEvent.ALLOCATED) allocated.add(pid + "@" + processor);
+		});
+		int p1 = os.reg(0);
+		int p2 = os.reg(1);
+		int p3 = os.reg(2);
+		int p4 = os.reg(3);
+		os.start(p1);
+		os.start(p2);
+		os.terminate(p1);
+		allocated.clear();
+		// Processor 1 goes away while P2 runs on it and processor 0 is free: P2 migrates
+		os.set_number_of_processors(1);
+		java.util.concurrent.CountDownLatch finish = new java.util.concurrent.CountDownLatch(1);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int pid : new int[] {p3, p4}) {
+			Thread thread = new Thread(() -> {
+				os.start(pid);
+				try { finish.await(); } catch (InterruptedException e) { }
+				os.terminate(pid);
+			});
+			thread.start();
+			threads.add(thread);
+			Thread.sleep(20);
+		}
+		// No processors at all: P2 is preempted and queued ahead of P3 and P4
+		os.set_number_of_processors(0);
+		// Two processors back: P2 and P3 are granted in the same call, P4 keeps waiting
+		os.set_number_of_processors(2);
+		int afterAdd = allocated.size();
+		os.set_number_of_processors(3);
+		os.schedule(p2);
+		finish.countDown();
+		for (Thread thread : threads) {
+			thread.join(test_timeout);
+		}
+		os.terminate(p2);
+		System.out.println("Allocations: " + allocated);
+		if (!allocated.equals(java.util.Arrays.asList(p2 + "@0", p2 + "@0", p3 + "@1", p4 + "@2")) || afterAdd != 3) {
+			test_status = "HOT RESIZE FAILED";
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "HOT RESIZE FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void time_slice_example_test() {
+	System.out.println("\n\n\n***** TIME-SLICE PREEMPTION *****");
+	String test_status = "TIME SLICE PASSED";
+	try {
+		long ms = 1_000_000;
+		OS os = new OS(10);
+		os.set_number_of_processors(1);
+		long[] quanta = new long[10];
+		java.util.Arrays.fill(quanta, 20 * ms);
+		quanta[3] = 5 * ms;
+		os.enableTimeSlicing(quanta);
+		long origin = System.nanoTime();
+		java.util.List<String> order = java.util.Collections.synchronizedList(new ArrayList<String>());
+		long[] sliceEnds = new long[2];
+		ProcessRuntime runtime = new ProcessRuntime(os);
+		// A CPU-bound process that never yields on its own, only when its slice ends;
+		// it waits for P2 to queue so a slow machine cannot end slice 0 first
+		runtime.spawn(3, process -> {
+			while (os.queuedCount() == 0) {
+				Thread.onSpinWait();
+			}
+			for (int slice = 0; slice < 2; slice++) {
+				while (!os.preemptionPending(process.pid())) {
+					Thread.onSpinWait();
+				}
+				sliceEnds[slice] = System.nanoTime() - origin;
+				order.add("P1 slice " + slice);
+				process.yieldIfPreempted();
+			}
+		});
+		Thread.sleep(1);
+		runtime.spawn(3, process -> order.add("P2 ran"));
+		runtime.awaitCompletion();
+		os.disableTimeSlicing();
+		System.out.println(order + ", slices ended at " + sliceEnds[0] / ms + "ms and " + sliceEnds[1] / ms + "ms");
+		if (!order.equals(java.util.Arrays.asList("P1 slice 0", "P2 ran", "P1 slice 1"))) test_status = "TIME SLICE FAILED";
+		if (sliceEnds[0] < 5 * ms || sliceEnds[1] - sliceEnds[0] < 5 * ms) test_status = "TIME SLICE FAILED";
+
+		// A stale PID must not see the expired slice of the process now in its slot
+		OS reuse = new OS(10);
+		reuse.set_number_of_processors(1);
+		reuse.enableTimeSlicing(ms);
+		int first = reuse.reg(0);
+		reuse.start(first);
+		long deadline = System.nanoTime() + test_timeout * ms;
+		while (!reuse.preemptionPending(first) && System.nanoTime() < deadline) Thread.sleep(1);
+		reuse.terminate(first);
+		int second = reuse.reg(0);
+		reuse.start(second);
+		while (!reuse.preemptionPending(second) && System.nanoTime() < deadline) Thread.sleep(1);
+		boolean stale = reuse.preemptionPending(first);
+		System.out.println("Slot reused by a new PID: its slice expired " + reuse.preemptionPending(second) + ", old PID sees " + stale);
+		if (ProcessTable.slotOf(first) != ProcessTable.slotOf(second) || !reuse.preemptionPending(second) || stale) test_status = "TIME SLICE FAILED";
+		reuse.disableTimeSlicing();
+
+		// With nothing armed the wheel's thread parks until the next arm()
+		java.util.Set<Thread> existing = Thread.getAllStackTraces().keySet();
+		TimingWheel wheel = new TimingWheel(ms, 64);
+		Thread ticker = null;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("timing-wheel") && !existing.contains(thread)) ticker = thread;
+		}
+		Thread.sleep(20);
+		Thread.State idleState = ticker.getState();
+		long armedAt = System.nanoTime();
+		wheel.arm(0, 5 * ms);
+		deadline = armedAt + test_timeout * ms;
+		while (!wheel.expired(0) && System.nanoTime() < deadline) Thread.sleep(1);
+		long fired = System.nanoTime() - armedAt;
+		wheel.close();
+		System.out.println("Idle wheel thread " + idleState + ", a 5ms timer armed after idling fired after " + fired / ms + "ms");
+		if (idleState != Thread.State.WAITING || !wheel.expired(0) || fired < 5 * ms) test_status = "TIME SLICE FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "TIME SLICE FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void load_test_example_test() {
+	System.out.println("\n\n\n***** SYNTHETIC LOAD TEST *****");
+	String test_status = "LOAD TEST PASSED";
+	try {
+		WorkloadSpec spec = WorkloadSpec.parse("processors=2", "processes=300", "arrivalRate=5000", "priorities=0:1,5:2",
+				"bursts=3", "burstTime=uniform:20us-80us", "thinkTime=fixed:10us", "maxLive=50");
+		LoadTest.Report report = LoadTest.run(spec, new OS(), ProcessRuntime.defaultThreadFactory());
+		String json = report.toJson();
+		System.out.print(json);
+		long perPriority = 0;
+		for (LoadTest.PriorityReport priority : report.priorities) {
+			perPriority += priority.processes;
+			if (priority.yieldWait.count() != 2 * priority.processes) test_status = "LOAD TEST FAILED";
+		}
+		if (report.completed != 300 || report.failures != 0 || perPriority != 300 || report.priorities.size() != 2) test_status = "LOAD TEST FAILED";
+		if (report.cpuUtilization <= 0 || report.cpuUtilization > report.occupancy || !json.contains("\"p99\"")) test_status = "LOAD TEST FAILED";
+
+		// Zero processors would never run anything, so the spec refuses it
+		try {
+			WorkloadSpec.parse("processors=0");
+			test_status = "LOAD TEST FAILED";
+		} catch (IllegalArgumentException expected) {
+			System.out.println("processors=0 refused: " + expected.getMessage());
+		}
+		// Spec values are quoted and escaped in the report
+		WorkloadSpec quoted = WorkloadSpec.parse("implementation=My\"OS\\v2", "processes=5", "arrivalRate=0");
+		String quotedJson = LoadTest.run(quoted, new OS(), ProcessRuntime.defaultThreadFactory()).toJson();
+		if (!quotedJson.contains("\"implementation\": \"My\\\"OS\\\\v2\"")) test_status = "LOAD TEST FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "LOAD TEST FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void sharded_example_test() {
+	System.out.println("\n\n\n***** SHARDED SCHEDULER *****");
+	String test_status = "SHARDED PASSED";
+	try (ShardedOS os = new ShardedOS(2)) {
+		// Balance by hand so the migration point is known
+		os.setBalanceInterval(1_000_000_000_000L);
+		os.set_number_of_processors(2);
+		int a = os.reg(1);
+		int b = os.reg(1);
+		int c = os.reg(1);
+		System.out.println("Home shards: " + os.homeShard(a) + ", " + os.homeShard(b) + ", " + os.homeShard(c));
+		if (os.homeShard(a) != 0 || os.homeShard(b) != 1 || os.homeShard(c) != 0) test_status = "SHARDED FAILED";
+		os.start(a);
+		os.start(b);
+		java.util.concurrent.CountDownLatch cRunning = new java.util.concurrent.CountDownLatch(1);
+		Thread thread = new Thread(() -> { os.start(c); cRunning.countDown(); });
+		thread.start();
+		Thread.sleep(20);
+		// C waits behind A on shard 0; once shard 1 is idle the balancer moves it there
+		os.terminate(b);
+		if (cRunning.getCount() != 1) test_status = "SHARDED FAILED";
+		os.rebalance();
+		boolean moved = cRunning.await(test_timeout, java.util.concurrent.TimeUnit.MILLISECONDS);
+		System.out.println("C running: " + moved + " on shard " + os.currentShard(c) + " after " + os.migrations() + " migration");
+		if (!moved || os.currentShard(c) != 1 || os.homeShard(c) != 0) test_status = "SHARDED FAILED";
+		os.terminate(c);
+		os.terminate(a);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "SHARDED FAILED";
+	}
+
+	// The idle shard fails to register a migrating waiter: it goes back on its
+	// old shard. When that fails too, its start() throws, and so does a retry.
+	for (int failures = 1; failures <= 2; failures++) {
+		java.util.concurrent.atomic.AtomicInteger regFailures = new java.util.concurrent.atomic.AtomicInteger();
+		OS[] flaky = new OS[2];
+		for (int i = 0; i < flaky.length; i++) {
+			flaky[i] = new OS() {
+				@Override
+				public int reg(int priority) {
+					if (regFailures.getAndDecrement() > 0) throw new IllegalStateException("Shard unavailable");
+					return super.reg(priority);
+				}
+			};
+		}
+		try (ShardedOS os = new ShardedOS(flaky)) {
+			os.setBalanceInterval(1_000_000_000_000L);
+			os.set_number_of_processors(2);
+			int a = os.reg(1);
+			int b = os.reg(1);
+			int c = os.reg(1);
+			os.start(a);
+			os.start(b);
+			String[] outcome = { "still waiting" };
+			java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+			Thread thread = new Thread(() -> {
+				try {
+					os.start(c);
+					outcome[0] = "ran on shard " + os.currentShard(c);
+				} catch (IllegalStateException e) {
+					outcome[0] = "failed";
+				}
+				done.countDown();
+			});
+			thread.start();
+			long deadline = System.nanoTime() + test_timeout * 1_000_000L;
+			while (flaky[0].queuedCount() == 0 && System.nanoTime() < deadline) Thread.sleep(1);
+			os.terminate(b);
+			regFailures.set(failures);
+			boolean rethrown = false;
+			try {
+				os.rebalance();
+			} catch (IllegalStateException e) {
+				rethrown = true;
+			}
+			os.terminate(a);
+			done.await(test_timeout, java.util.concurrent.TimeUnit.MILLISECONDS);
+			if (outcome[0].equals("failed")) {
+				try {
+					os.start(c);
+				} catch (IllegalStateException e) {
+					outcome[0] += " twice";
+				}
+			}
+			os.terminate(c);
+			System.out.println(failures + " failed reg: rebalance threw " + rethrown + ", C " + outcome[0] + ", " + os.migrations() + " migrations");
+			String expected = failures == 1 ? "ran on shard 0" : "failed twice";
+			if (!rethrown || !outcome[0].equals(expected) || os.migrations() != 0) test_status = "SHARDED FAILED";
+		} catch (Exception e) {
+			e.printStackTrace();
+			test_status = "SHARDED FAILED";
+		}
+	}
+
+	// The same front end over two shards served on local sockets
+	java.nio.file.Path directory = null;
+	try {
+		directory = java.nio.file.Files.createTempDirectory("os-shards");
+		try (ShardServer first = new ShardServer(directory.resolve("0.sock"), new OS());
+				ShardServer second = new ShardServer(directory.resolve("1.sock"), new OS());
+				RemoteShard one = RemoteShard.connect(first.socket());
+				RemoteShard two = RemoteShard.connect(second.socket());
+				ShardedOS os = new ShardedOS(one, two)) {
+			os.set_number_of_processors(2);
+			ProcessRuntime runtime = new ProcessRuntime(os);
+			for (int i = 0; i < 8; i++) {
+				runtime.spawn(i % 3, process -> {
+					for (int n = 0; n < 3; n++) {
+						process.schedule();
+					}
+				});
+			}
+			runtime.awaitCompletion();
+			System.out.println("Remote shards ran 8 processes with " + runtime.failureCount() + " failures, "
+					+ os.migrations() + " migrations");
+			if (runtime.failureCount() != 0) test_status = "SHARDED FAILED";
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "SHARDED FAILED";
+	} finally {
+		if (directory != null) directory.toFile().delete();
+	}
+
+	// A shard that goes away, or answers garbage, fails the call in flight
+	// instead of leaving it waiting for a response
+	java.nio.file.Path lost = null;
+	try {
+		lost = java.nio.file.Files.createTempDirectory("os-shards");
+		OS backing = new OS();
+		ShardServer server = new ShardServer(lost.resolve("0.sock"), backing);
+		try (RemoteShard shard = RemoteShard.connect(server.socket())) {
+			shard.set_number_of_processors(1);
+			int holder = shard.reg(1);
+			shard.start(holder);
+			int waiter = shard.reg(1);
+			Throwable[] thrown = new Throwable[1];
+			Thread caller = new Thread(() -> {
+				try {
+					shard.start(waiter);
+				} catch (Throwable e) {
+					thrown[0] = e;
+				}
+			});
+			caller.setDaemon(true);
+			caller.start();
+			long deadline = System.nanoTime() + test_timeout * 1_000_000L;
+			while (shard.queuedCount() == 0 && System.nanoTime() < deadline) Thread.sleep(1);
+			server.close();
+			caller.join(test_timeout);
+			// Lets the server's thread for the blocked start finish
+			backing.terminate(holder);
+			System.out.println("Start blocked on a closed shard returned " + !caller.isAlive() + " with " + thrown[0]);
+			if (caller.isAlive() || !(thrown[0] instanceof java.io.UncheckedIOException)) test_status = "SHARDED FAILED";
+		} finally {
+			server.close();
+		}
+		java.nio.file.Path path = lost.resolve("1.sock");
+		try (java.nio.channels.ServerSocketChannel garbage = java.nio.channels.ServerSocketChannel.open(java.net.StandardProtocolFamily.UNIX)) {
+			garbage.bind(java.net.UnixDomainSocketAddress.of(path));
+			Thread responder = new Thread(() -> {
+				try (java.nio.channels.SocketChannel channel = garbage.accept()) {
+					java.nio.ByteBuffer request = java.nio.ByteBuffer.allocate(ShardServer.REQUEST_BYTES);
+					ShardServer.readFully(channel, request);
+					// A negative result length
+					java.nio.ByteBuffer response = java.nio.ByteBuffer.allocate(ShardServer.RESPONSE_HEADER_BYTES);
+					response.putInt(request.getInt(0)).putInt(0).putInt(-1).flip();
+					channel.write(response);
+					Thread.sleep(test_timeout);
+				} catch (Exception e) {
+					// The client hung up
+				}
+			});
+			responder.setDaemon(true);
+			responder.start();
+			try (RemoteShard shard = RemoteShard.connect(path)) {
+				Throwable[] thrown = new Throwable[1];
+				Thread caller = new Thread(() -> {
+					try {
+						shard.queuedCount();
+					} catch (Throwable e) {
+						thrown[0] = e;
+					}
+				});
+				caller.setDaemon(true);
+				caller.start();
+				caller.join(test_timeout);
+				System.out.println("Call answered with a negative length returned " + !caller.isAlive() + " with " + thrown[0]);
+				if (caller.isAlive() || !(thrown[0] instanceof java.io.UncheckedIOException)) test_status = "SHARDED FAILED";
+			}
+		} finally {
+			java.nio.file.Files.deleteIfExists(path);
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "SHARDED FAILED";
+	} finally {
+		if (lost != null) lost.toFile().delete();
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void admission_example_test() {
+	System.out.println("\n\n\n***** ADMISSION CONTROL *****");
+	String test_status = "ADMISSION PASSED";
+	try {
+		OS os = new OS(10);
+		os.set_number_of_processors(1);
+		SchedulerMetrics metrics = os.enableMetrics();
+		int[] capacities = new int[10];
+		java.util.Arrays.fill(capacities, 10);
+		capacities[5] = 1;
+		os.setQueueCapacity(2);
+		os.setQueueCapacity(capacities);
+		os.setShedPolicy(ShedPolicy.DROP_LOWEST_PRIORITY);
+		java.util.List<String> log = java.util.Collections.synchronizedList(new ArrayList<String>());
+		os.setAdmissionListener((pid, priority, shed) -> log.add((shed ? "shed " : "refused ") + priority));
+		java.util.List<Integer> dequeued = java.util.Collections.synchronizedList(new ArrayList<Integer>());
+		os.setEventSink((event, pid, priority, processor) -> {
+			if (event == SchedulerEvent.DEQUEUED) dequeued.add(priority);
+		});
+		int running = os.reg(1);
+		os.start(running);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int priority : new int[] {5, 2, 1}) {
+			int pid = os.reg(priority);
+			Thread thread = new Thread(() -> {
+				try {
+					os.start(pid);
+					log.add("ran " + priority);
+				} catch (java.util.concurrent.RejectedExecutionException e) {
+					log.add("gave up " + priority);
+				}
+				os.terminate(pid);
+			});
+			thread.start();
+			threads.add(thread);
+			Thread.sleep(20);
+			if (priority == 5) {
+				// Level 5 holds one waiter, so a second one is refused outright
+				int second = os.reg(5);
+				try {
+					os.start(second);
+					test_status = "ADMISSION FAILED";
+				} catch (java.util.concurrent.RejectedExecutionException e) {
+					os.terminate(second);
+				}
+			}
+		}
+		// Priority 1 shed the priority 5 waiter; the queue now holds only more
+		// urgent waiters, so nothing can be shed for priority 3
+		int late = os.reg(3);
+		boolean lateAdmitted = os.tryStart(late, 1, java.util.concurrent.TimeUnit.SECONDS);
+		// With room to queue, tryStart gives up when its timeout runs out
+		os.setQueueCapacity(3);
+		long begin = System.nanoTime();
+		boolean timedOut = !os.tryStart(late, 30, java.util.concurrent.TimeUnit.MILLISECONDS);
+		long waited = (System.nanoTime() - begin) / 1_000_000;
+		int queued = os.queuedCount();
+		os.terminate(late);
+		os.terminate(running);
+		for (Thread thread : threads) {
+			thread.join(test_timeout);
+		}
+		System.out.println(log + ", tryStart timed out after " + waited + "ms, rejected " + metrics.getRejectedCount()
+				+ ", shed " + metrics.getShedCount());
+		if (!log.equals(java.util.Arrays.asList("refused 5", "shed 5", "gave up 5", "refused 3", "ran 1", "ran 2"))) test_status = "ADMISSION FAILED";
+		if (lateAdmitted || !timedOut || waited < 30 || queued != 2) test_status = "ADMISSION FAILED";
+		if (metrics.getRejectedCount() != 2 || metrics.getShedCount() != 1) test_status = "ADMISSION FAILED";
+		// The shed waiter and the timed-out tryStart each left the queue with an event
+		System.out.println("Dequeued without a processor at priorities " + dequeued);
+		if (!dequeued.equals(java.util.Arrays.asList(5, 3))) test_status = "ADMISSION FAILED";
+
+		// Shedding needs SchedulingPolicy.last(), which CfsPolicy lacks, in either order of setting
+		String[] refusals = new String[2];
+		OS cfs = new OS(10);
+		cfs.setSchedulingPolicy(new CfsPolicy(10));
+		try {
+			cfs.setShedPolicy(ShedPolicy.DROP_LOWEST_PRIORITY);
+		} catch (IllegalStateException e) {
+			refusals[0] = e.getMessage();
+		}
+		OS shedding = new OS(10);
+		shedding.setShedPolicy(ShedPolicy.DROP_LOWEST_PRIORITY);
+		try {
+			shedding.setSchedulingPolicy(new CfsPolicy(10));
+		} catch (IllegalStateException e) {
+			refusals[1] = e.getMessage();
+		}
+		System.out.println("Refused: " + refusals[0]);
+		for (String refusal : refusals) {
+			if (refusal == null || !refusal.contains("DROP_LOWEST_PRIORITY")) test_status = "ADMISSION FAILED";
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "ADMISSION FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void jfr_example_test() {
+	System.out.println("\n\n\n***** FLIGHT RECORDER EVENTS *****");
+	String test_status = "JFR PASSED";
+	java.nio.file.Path file = null;
+	try (java.io.Reader settings = new java.io.InputStreamReader(Tests.class.getResourceAsStream("/scheduler.jfc"));
+			jdk.jfr.Recording recording = new jdk.jfr.Recording(jdk.jfr.Configuration.create(settings))) {
+		recording.start();
+		OS os = new OS(10);
+		os.set_number_of_processors(1);
+		int p1 = os.reg(2);
+		int p2 = os.reg(2);
+		os.start(p1);
+		Thread thread = new Thread(() -> { os.start(p2); os.terminate(p2); });
+		thread.start();
+		Thread.sleep(20);
+		// P2 waits at the same priority, so P1 gives its processor up
+		os.schedule(p1);
+		thread.join(test_timeout);
+		os.terminate(p1);
+		recording.stop();
+		file = java.nio.file.Files.createTempFile("os", ".jfr");
+		recording.dump(file);
+		java.util.Map<String, Integer> counts = new java.util.TreeMap<String, Integer>();
+		long p2WaitMillis = -1;
+		for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+			String name = event.getEventType().getName();
+			if (!name.startsWith("os.simulation.")) continue;
+			counts.merge(name.substring("os.simulation.".length()), 1, Integer::sum);
+			if (name.equals("os.simulation.Allocated") && event.getInt("pid") == p2) {
+				p2WaitMillis = event.getDuration().toMillis();
+			}
+			if (name.equals("os.simulation.Preempted") && (event.getInt("pid") != p1 || !event.getString("reason").equals("policy"))) {
+				test_status = "JFR FAILED";
+			}
+		}
+		System.out.println(counts + ", P2 waited " + p2WaitMillis + "ms");
+		java.util.Map<String, Integer> expected = new java.util.TreeMap<String, Integer>();
+		expected.put("Registered", 2);
+		expected.put("Enqueued", 2);
+		expected.put("Allocated", 3);
+		expected.put("Released", 3);
+		expected.put("Signaled", 2);
+		expected.put("Preempted", 1);
+		expected.put("Terminated", 2);
+		if (!counts.equals(expected) || p2WaitMillis < 15) test_status = "JFR FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "JFR FAILED";
+	} finally {
+		if (file != null) file.toFile().delete();
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void conformance_example_test() {
+	System.out.println("\n\n\n***** CONFORMANCE HARNESS *****");
+	String test_status = "CONFORMANCE PASSED";
+	try {
+		long begin = System.nanoTime();
+		java.util.List<Conformance.Result> results = Conformance.run(Conformance.defaultTargets());
+		long elapsed = (System.nanoTime() - begin) / 1_000_000;
+		for (Conformance.Result result : results) {
+			System.out.println(result);
+			if (!result.passed) test_status = "CONFORMANCE FAILED";
+		}
+		System.out.println(results.size() + " checks in " + elapsed + "ms");
+		if (results.size() != 4 * 9) test_status = "CONFORMANCE FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "CONFORMANCE FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void processor_pool_example_test() {
+	System.out.println("\n\n\n***** PROCESSOR POOL *****");
+	String test_status = "PROCESSOR POOL PASSED";
+	// 130 processors span three words of the bitmap
+	ProcessorPool pool = new ProcessorPool(130);
+	for (int i = 0; i < 130; i++) {
+		if (pool.claim() != i) test_status = "PROCESSOR POOL FAILED";
+	}
+	if (pool.claim() != -1 || pool.freeCount() != 0 || pool.anyFree()) test_status = "PROCESSOR POOL FAILED";
+	// Released bits on either side of a word boundary come back lowest first
+	pool.release(129);
+	pool.release(64);
+	pool.release(63);
+	pool.release(64);
+	int freed = pool.freeCount();
+	int[] claimed = { pool.claim(), pool.claim(), pool.claim(), pool.claim() };
+	System.out.println("Free after releasing 63, 64 (twice) and 129: " + freed + ", claimed back " + java.util.Arrays.toString(claimed));
+	if (freed != 3 || !java.util.Arrays.equals(claimed, new int[] {63, 64, 129, -1})) test_status = "PROCESSOR POOL FAILED";
+	pool.release(100);
+	if (!pool.isFree(100) || pool.claim(99) || !pool.claim(100) || pool.claim(100) || pool.freeCount() != 0) test_status = "PROCESSOR POOL FAILED";
+	// Processors outside the pool are refused, including the unused bits of its last word
+	int refused = 0;
+	for (int processor : new int[] {-1, 130, 191, 192}) {
+		try {
+			pool.release(processor);
+		} catch (IllegalArgumentException e) {
+			refused++;
+		}
+		try {
+			pool.claim(processor);
+		} catch (IllegalArgumentException e) {
+			refused++;
+		}
+	}
+	System.out.println("Out-of-range claims and releases refused: " + refused + " of 8");
+	if (refused != 8 || pool.claim() != -1 || pool.freeCount() != 0) test_status = "PROCESSOR POOL FAILED";
+
+	// Threads claiming and releasing at once never share a processor
+	ProcessorPool shared = new ProcessorPool(70);
+	java.util.concurrent.atomic.AtomicIntegerArray holders = new java.util.concurrent.atomic.AtomicIntegerArray(70);
+	java.util.concurrent.atomic.AtomicInteger clashes = new java.util.concurrent.atomic.AtomicInteger();
+	Thread[] threads = new Thread[8];
+	for (int t = 0; t < threads.length; t++) {
+		threads[t] = new Thread(() -> {
+			for (int n = 0; n < 20000; n++) {
+				int processor = shared.claim();
+				if (processor == -1) continue;
+				if (holders.incrementAndGet(processor) != 1) clashes.incrementAndGet();
+				holders.decrementAndGet(processor);
+				shared.release(processor);
+			}
+		});
+		threads[t].start();
+	}
+	for (Thread thread : threads) {try {thread.join(test_timeout * 10);} catch (InterruptedException e) {e.printStackTrace();}}
+	System.out.println("Concurrent clashes: " + clashes.get() + ", free at the end: " + shared.freeCount());
+	if (clashes.get() != 0 || shared.freeCount() != 70) test_status = "PROCESSOR POOL FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void ready_queue_example_test() {
+	System.out.println("\n\n\n***** READY QUEUE *****");
+	String test_status = "READY QUEUE PASSED";
+	// 140 levels span three words of the non-empty mask
+	ReadyQueue queue = new ReadyQueue(140);
+	if (queue.highestPriority() != -1 || queue.lowestPriority() != -1 || queue.poll() != -1) test_status = "READY QUEUE FAILED";
+	queue.offer(500, 130);
+	queue.offer(100, 64);
+	queue.offer(200, 3);
+	queue.offer(101, 64);
+	System.out.println("Levels " + queue.highestPriority() + ".." + queue.lowestPriority() + ", last " + queue.peekLast());
+	if (queue.highestPriority() != 3 || queue.lowestPriority() != 130 || queue.peekLast() != 500) test_status = "READY QUEUE FAILED";
+
+	// Level 64 wraps its ring before growing past the initial 16 slots
+	for (int i = 0; i < 10; i++) {
+		queue.offer(102 + i, 64);
+	}
+	for (int i = 0; i < 8; i++) {
+		if (queue.poll(64) != 100 + i) test_status = "READY QUEUE FAILED";
+	}
+	for (int i = 0; i < 20; i++) {
+		queue.offer(112 + i, 64);
+	}
+	if (queue.size(64) != 24 || !queue.remove(120, 64) || queue.remove(120, 64)) test_status = "READY QUEUE FAILED";
+	int[] order = queue.toArray();
+	StringBuilder drained = new StringBuilder();
+	int previous = -1;
+	for (int pid = queue.poll(); pid != -1; pid = queue.poll()) {
+		drained.append(pid).append(' ');
+		// FIFO within level 64, whose PIDs were offered in increasing order
+		if (pid >= 100 && pid < 200 && pid <= previous) test_status = "READY QUEUE FAILED";
+		if (pid >= 100 && pid < 200) previous = pid;
+	}
+	System.out.println("Drained " + drained.toString().trim());
+	int[] expected = new int[25];
+	expected[0] = 200;
+	for (int i = 1, pid = 108; pid < 132; pid++) {
+		if (pid != 120) expected[i++] = pid;
+	}
+	expected[24] = 500;
+	if (!java.util.Arrays.equals(order, expected)) test_status = "READY QUEUE FAILED";
+	if (!queue.isEmpty() || queue.highestPriority() != -1 || queue.lowestPriority() != -1) test_status = "READY QUEUE FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void process_table_example_test() {
+	System.out.println("\n\n\n***** PROCESS TABLE *****");
+	String test_status = "PROCESS TABLE PASSED";
+	ProcessTable table = new ProcessTable();
+	int first = table.register(5);
+	int second = table.register(7);
+	table.free(first);
+	// The freed slot is reused under a new generation
+	int reused = table.register(3);
+	boolean staleRejected = false;
+	try {
+		table.priority(first);
+	} catch (IllegalArgumentException e) {
+		staleRejected = true;
+	}
+	System.out.println("PID " + first + " freed, slot reused as PID " + reused + ", stale PID rejected: " + staleRejected);
+	if (reused == first || ProcessTable.slotOf(reused) != ProcessTable.slotOf(first)) test_status = "PROCESS TABLE FAILED";
+	if (!staleRejected || table.isLive(first) || !table.isLive(reused) || table.priority(reused) != 3) test_status = "PROCESS TABLE FAILED";
+	if (table.priority(second) != 7 || table.state(reused) != ProcessTable.IDLE || table.liveCount() != 2) test_status = "PROCESS TABLE FAILED";
+
+	// Churn keeps the table at its peak live count, and every PID ever handed out is distinct
+	java.util.HashSet<Integer> pids = new java.util.HashSet<Integer>();
+	for (int i = 0; i < 300; i++) {
+		int pid = table.register(1);
+		if (!pids.add(pid)) test_status = "PROCESS TABLE FAILED";
+		table.free(pid);
+	}
+	System.out.println("300 register/free cycles: " + pids.size() + " distinct PIDs, capacity " + table.capacity());
+	if (table.capacity() != 16 || table.slotLimit() != 3) test_status = "PROCESS TABLE FAILED";
+
+	// OS refuses a terminated process's PID after its slot has a new owner
+	OS os = new OS();
+	int old = os.reg(1);
+	os.terminate(old);
+	int next = os.reg(1);
+	try {
+		os.start(old);
+		test_status = "PROCESS TABLE FAILED";
+	} catch (IllegalArgumentException e) {
+		System.out.println("OS rejected stale PID " + old + ": " + e.getMessage());
+	}
+	if (next == old) test_status = "PROCESS TABLE FAILED";
+
+	System.out.println("\n" + test_status);
+}
+
+public void async_event_sink_example_test() {
+	System.out.println("\n\n\n***** ASYNC EVENT SINK *****");
+	String test_status = "EVENT SINK PASSED";
+	try {
+		// Events from each producer reach the listener in publish order
+		int producers = 4, perProducer = 20000;
+		int[] lastSeen = new int[producers];
+		java.util.Arrays.fill(lastSeen, -1);
+		java.util.concurrent.atomic.AtomicInteger outOfOrder = new java.util.concurrent.atomic.AtomicInteger();
+		java.util.concurrent.atomic.AtomicInteger delivered = new java.util.concurrent.atomic.AtomicInteger();
+		Thread[] consumer = new Thread[1];
+		AsyncEventSink sink = new AsyncEventSink(1 << 17, (nanoTime, event, pid, priority, processor) -> {
+			consumer[0] = Thread.currentThread();
+			if (pid != lastSeen[priority] + 1) outOfOrder.incrementAndGet();
+			lastSeen[priority] = pid;
+			delivered.incrementAndGet();
+		});
+		Thread[] threads = new Thread[producers];
+		for (int t = 0; t < producers; t++) {
+			int producer = t;
+			threads[t] = new Thread(() -> {
+				for (int n = 0; n < perProducer; n++) sink.publish(SchedulerEvent.ENQUEUED, n, producer, -1);
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join(test_timeout * 10);
+		long deadline = System.nanoTime() + test_timeout * 1_000_000L;
+		while (delivered.get() < producers * perProducer && System.nanoTime() < deadline) Thread.sleep(1);
+		// Drained and idle: the consumer parks without a timeout
+		Thread.State idle = null;
+		while (System.nanoTime() < deadline && (idle = consumer[0].getState()) != Thread.State.WAITING) Thread.sleep(1);
+		sink.publish(SchedulerEvent.FREED, perProducer, 0, 0);
+		sink.close();
+		System.out.println("Delivered " + delivered.get() + " of " + (producers * perProducer + 1) + ", out of order " + outOfOrder.get()
+				+ ", dropped " + sink.droppedCount() + ", idle consumer " + idle);
+		if (delivered.get() != producers * perProducer + 1 || outOfOrder.get() != 0 || sink.droppedCount() != 0) test_status = "EVENT SINK FAILED";
+		if (idle != Thread.State.WAITING) test_status = "EVENT SINK FAILED";
+
+		// A full ring drops the newest events instead of blocking the publisher
+		java.util.concurrent.CountDownLatch stall = new java.util.concurrent.CountDownLatch(1);
+		java.util.List<Integer> received = java.util.Collections.synchronizedList(new ArrayList<Integer>());
+		AsyncEventSink full = new AsyncEventSink(8, (nanoTime, event, pid, priority, processor) -> {
+			try { stall.await(); } catch (InterruptedException e) { }
+			received.add(pid);
+		});
+		for (int pid = 0; pid < 20; pid++) full.publish(SchedulerEvent.REGISTERED, pid, 0, -1);
+		stall.countDown();
+		full.close();
+		System.out.println("Ring of 8 with a stalled listener: received " + received + ", dropped " + full.droppedCount());
+		if (!received.equals(java.util.Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7)) || full.droppedCount() != 12) test_status = "EVENT SINK FAILED";
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "EVENT SINK FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void wait_strategy_example_test() {
+	System.out.println("\n\n\n***** WAIT STRATEGIES *****");
+	String test_status = "WAIT STRATEGIES PASSED";
+	try {
+		java.util.List<Conformance.Target> targets = new ArrayList<Conformance.Target>();
+		long[] budgets = new long[WaitStrategy.values().length];
+		for (WaitStrategy strategy : WaitStrategy.values()) {
+			// The hand-off scenarios and stress runs of the conformance harness,
+			// spinning outside the lock even on one CPU
+			targets.add(new Conformance.Target("OS(" + strategy + ")", () -> {
+				OS os = new OS();
+				os.setWaitStrategy(strategy);
+				os.setSpinOnSingleCpu(true);
+				return os;
+			}));
+
+			// Many more processes than processors, all queued before their
+			// threads start so that every yield hands the processor over
+			OS os = new OS();
+			os.setWaitStrategy(strategy);
+			os.setSpinOnSingleCpu(true);
+			os.set_number_of_processors(2);
+			int[] ids = new int[16];
+			for (int i = 0; i < ids.length; i++) ids[i] = os.reg(1);
+			os.startAll(ids);
+			java.util.concurrent.atomic.AtomicInteger finished = new java.util.concurrent.atomic.AtomicInteger();
+			Thread[] threads = new Thread[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				int pid = ids[i];
+				threads[i] = new Thread(() -> {
+					os.start(pid);
+					for (int n = 0; n < 50; n++) os.schedule(pid);
+					os.terminate(pid);
+					finished.incrementAndGet();
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads) thread.join(test_timeout * 10);
+			budgets[strategy.ordinal()] = os.spinBudgetNanos();
+			System.out.println(strategy + ": " + finished.get() + " of 16 processes finished 50 yields, spin budget " + os.spinBudgetNanos() / 1000 + "us");
+			if (finished.get() != 16 || os.queuedCount() != 0 || os.freeProcessors() != 2) test_status = "WAIT STRATEGIES FAILED";
+		}
+		// SPINNING keeps its fixed budget; ADAPTIVE moved its own
+		if (budgets[WaitStrategy.SPINNING.ordinal()] != 20_000 || budgets[WaitStrategy.ADAPTIVE.ordinal()] == 20_000) test_status = "WAIT STRATEGIES FAILED";
+		for (Conformance.Result result : Conformance.run(targets)) {
+			System.out.println(result);
+			if (!result.passed) test_status = "WAIT STRATEGIES FAILED";
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "WAIT STRATEGIES FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void metrics_example_test() {
+	System.out.println("\n\n\n***** SCHEDULER METRICS *****");
+	String test_status = "METRICS PASSED";
+	try {
+		OS os = new OS(10);
+		os.set_number_of_processors(1);
+		SchedulerMetrics metrics = os.enableMetrics();
+		int p1 = os.reg(2);
+		int p2 = os.reg(2);
+		os.start(p1);
+		Thread thread = new Thread(() -> { os.start(p2); os.terminate(p2); });
+		thread.start();
+		Thread.sleep(20);
+		// P2 waits while P1 runs, then gets the processor when P1 yields
+		os.schedule(p1);
+		thread.join(test_timeout);
+		SchedulerMetrics.Snapshot before = metrics.snapshot();
+		System.out.println("Before reset: " + before.dispatches + " dispatches, " + metrics.waitTimes(2).count() + " waits at priority 2, P2 waited "
+				+ before.waitTimeP99Nanos[2] / 1_000_000 + "ms");
+		if (before.dispatches != 3 || metrics.waitTimes(2).count() != 3 || before.waitTimeP99Nanos[2] < 15_000_000) test_status = "METRICS FAILED";
+
+		// P1 has held the processor since its second grant; after the reset
+		// only the time from the reset on counts as busy. Each step is timed
+		// from both sides, which bounds the utilisation the metrics may report.
+		Thread.sleep(20);
+		long[] reset = { System.nanoTime(), 0 };
+		metrics.reset();
+		reset[1] = System.nanoTime();
+		Thread.sleep(10);
+		long[] released = { System.nanoTime(), 0 };
+		os.terminate(p1);
+		released[1] = System.nanoTime();
+		Thread.sleep(20);
+		long[] measured = { System.nanoTime(), 0 };
+		double utilization = metrics.getProcessorUtilization()[0];
+		measured[1] = System.nanoTime();
+		double lowest = (double) (released[0] - reset[1]) / (measured[1] - reset[0]);
+		double highest = (double) (released[1] - reset[0]) / (measured[0] - reset[1]);
+		System.out.println("After reset: utilisation " + String.format("%.3f", utilization) + ", expected " + String.format("%.3f", lowest)
+				+ ".." + String.format("%.3f", highest) + ", " + metrics.getDispatchCount() + " dispatches");
+		if (utilization < lowest || utilization > highest || metrics.getDispatchCount() != 0) test_status = "METRICS FAILED";
+
+		// The JMX view offers the same percentiles as snapshot()
+		javax.management.ObjectName name = metrics.registerMBean("metrics-test");
+		javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+		SchedulerMetrics.Snapshot after = metrics.snapshot();
+		try {
+			for (String attribute : new String[] {"WaitTimeP50Nanos", "WaitTimeP99Nanos", "RunTimeP50Nanos", "RunTimeP99Nanos"}) {
+				long[] viaJmx = (long[]) server.getAttribute(name, attribute);
+				long[] viaSnapshot = (long[]) SchedulerMetrics.Snapshot.class.getField(Character.toLowerCase(attribute.charAt(0)) + attribute.substring(1)).get(after);
+				if (!java.util.Arrays.equals(viaJmx, viaSnapshot)) {
+					System.out.println(attribute + " differs between JMX and snapshot()");
+					test_status = "METRICS FAILED";
+				}
+			}
+			if (after.runTimeP50Nanos[2] < 8_000_000) test_status = "METRICS FAILED";
+		} finally {
+			server.unregisterMBean(name);
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "METRICS FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void discrete_event_vs_os_example_test() {
+	System.out.println("\n\n\n***** DISCRETE EVENT VS OS *****");
+	String test_status = "DISCRETE EVENT VS OS PASSED";
+	// One seeded script: arrivals, priorities and session lengths, with ties
+	int nProcesses = 400, nProcessors = 4;
+	java.util.SplittableRandom random = new java.util.SplittableRandom(7);
+	long[] arrivals = new long[nProcesses];
+	int[] priorities = new int[nProcesses];
+	long[][] sessions = new long[nProcesses][];
+	for (int i = 0; i < nProcesses; i++) {
+		arrivals[i] = (i == 0 ? 0 : arrivals[i - 1]) + random.nextInt(0, 8);
+		priorities[i] = random.nextInt(5);
+		sessions[i] = new long[1 + random.nextInt(4)];
+		for (int s = 0; s < sessions[i].length; s++) sessions[i][s] = 1 + random.nextInt(40);
+	}
+
+	// The simulator's scheduling decisions...
+	ArrayList<String> simulated = new ArrayList<String>();
+	DiscreteEventSimulator sim = new DiscreteEventSimulator(nProcessors, 10);
+	sim.setEventSink((event, pid, priority, processor) -> { if (event != SchedulerEvent.SIGNALED) simulated.add(sim.now() + " " + event + " " + pid + " " + processor); });
+	sim.setSessionListener((time, pid, session) -> simulated.add(time + " SESSION " + pid + " " + session));
+	for (int i = 0; i < nProcesses; i++) sim.addProcess(arrivals[i], priorities[i], sessions[i]);
+	sim.run();
+
+	// ...and a real OS's, driven through the same script on a virtual clock
+	ArrayList<String> threaded = new ArrayList<String>();
+	OS os = new OS(10);
+	os.set_number_of_processors(nProcessors);
+	// Grants complete their futures here, to be run before the clock moves on
+	java.util.ArrayDeque<Runnable> completions = new java.util.ArrayDeque<Runnable>();
+	os.setAsyncExecutor(completions::add);
+	long[] now = new long[1];
+	os.setEventSink((event, pid, priority, processor) -> { if (event != SchedulerEvent.SIGNALED) threaded.add(now[0] + " " + event + " " + pid + " " + processor); });
+	// Pending events as {time, sequence, process index, 0 = arrival or 1 = session end}
+	java.util.PriorityQueue<long[]> heap = new java.util.PriorityQueue<long[]>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+	long[] sequence = new long[1];
+	int[] pids = new int[nProcesses];
+	int[] next = new int[nProcesses];
+	for (int i = 0; i < nProcesses; i++) {
+		pids[i] = os.reg(priorities[i]);
+		heap.add(new long[] {arrivals[i], sequence[0]++, i, 0});
+	}
+	java.util.function.IntConsumer begin = i -> {
+		threaded.add(now[0] + " SESSION " + pids[i] + " " + next[i]);
+		heap.add(new long[] {now[0] + sessions[i][next[i]++], sequence[0]++, i, 1});
+	};
+	while (!heap.isEmpty()) {
+		long[] event = heap.poll();
+		now[0] = event[0];
+		int i = (int) event[2];
+		if (event[3] == 0) {
+			os.startAsync(pids[i]).thenRun(() -> begin.accept(i));
+		} else if (next[i] == sessions[i].length) {
+			os.terminate(pids[i]);
+		} else {
+			os.yieldAsync(pids[i]).thenRun(() -> begin.accept(i));
+		}
+		while (!completions.isEmpty()) completions.poll().run();
+	}
+
+	int firstDifference = -1;
+	for (int i = 0; i < Math.max(simulated.size(), threaded.size()) && firstDifference == -1; i++) {
+		if (i >= simulated.size() || i >= threaded.size() || !simulated.get(i).equals(threaded.get(i))) firstDifference = i;
+	}
+	System.out.println(nProcesses + " processes on " + nProcessors + " processors: simulator " + simulated.size() + " events, OS " + threaded.size() + " events");
+	if (firstDifference != -1) {
+		test_status = "DISCRETE EVENT VS OS FAILED";
+		System.out.println("First difference at " + firstDifference + ": simulator "
+				+ (firstDifference < simulated.size() ? simulated.get(firstDifference) : "-") + ", OS "
+				+ (firstDifference < threaded.size() ? threaded.get(firstDifference) : "-"));
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void local_queue_example_test() {
+	System.out.println("\n\n\n***** PER-PROCESSOR RUN QUEUES *****");
+	String test_status = "LOCAL QUEUES PASSED";
+	try {
+		// Each run is "<who processor 1 ran> <steals for it> <steals for processor 0's next>".
+		// A at priority 3 is within tolerance 2 of W at 5, so processor 1 keeps to
+		// its own queue and runs W; processor 0 then runs A from its own queue
+		String tolerated = localQueueRun(2, 3);
+		// A at priority 2 beats W by more than the tolerance and is stolen, which
+		// leaves processor 0's queue empty so it steals W in turn
+		String stolen = localQueueRun(2, 2);
+		// With tolerance 0 priority order is global
+		String strict = localQueueRun(0, 4);
+		System.out.println("Tolerance 2, A at 3: " + tolerated + "; A at 2: " + stolen + "; tolerance 0, A at 4: " + strict);
+		if (!tolerated.equals("W 0 0") || !stolen.equals("A 1 1") || !strict.equals("A 1 1")) {
+			test_status = "LOCAL QUEUES FAILED";
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "LOCAL QUEUES FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+// Two processors. A runs on processor 0 and W (priority 5) on 1; two more
+// urgent newcomers queue, then A and W yield to them, which parks A on
+// processor 0's run queue and W on processor 1's. The newcomer on processor 1
+// terminates, then the one on processor 0.
+private String localQueueRun(int tolerance, int priorityA) throws InterruptedException {
+	LocalQueueOS os = new LocalQueueOS(10, tolerance);
+	os.set_number_of_processors(2);
+	java.util.List<String> log = java.util.Collections.synchronizedList(new ArrayList<String>());
+	os.setEventSink((event, pid, priority, processor) -> log.add(event + " " + pid + (processor >= 0 ? "@" + processor : "")));
+	int[] pids = { os.reg(priorityA), os.reg(5), os.reg(0), os.reg(0) };
+	java.util.concurrent.Semaphore[] go = new java.util.concurrent.Semaphore[4];
+	Thread[] threads = new Thread[4];
+	for (int i = 0; i < 4; i++) {
+		int pid = pids[i];
+		java.util.concurrent.Semaphore step = go[i] = new java.util.concurrent.Semaphore(0);
+		// A and W yield when told; every process terminates when told
+		boolean yields = i < 2;
+		threads[i] = new Thread(() -> {
+			os.start(pid);
+			if (yields) {
+				step.acquireUninterruptibly();
+				os.schedule(pid);
+			}
+			step.acquireUninterruptibly();
+			os.terminate(pid);
+		});
+	}
+	threads[0].start();
+	awaitLogged(log, "ALLOCATED " + pids[0] + "@0");
+	threads[1].start();
+	awaitLogged(log, "ALLOCATED " + pids[1] + "@1");
+	for (int i = 2; i < 4; i++) {
+		threads[i].start();
+		awaitLogged(log, "ENQUEUED " + pids[i]);
+	}
+	for (int i = 0; i < 2; i++) {
+		go[i].release();
+		awaitLogged(log, "ENQUEUED " + pids[i]);
+	}
+
+	int onOne = log.contains("ALLOCATED " + pids[2] + "@1") ? 2 : 3;
+	// Only what follows each release counts; A and W were allocated before
+	log.clear();
+	long steals = os.steals();
+	go[onOne].release();
+	awaitLogged(log, "TERMINATED " + pids[onOne]);
+	String next = "?";
+	long deadline = System.nanoTime() + test_timeout * 1_000_000L;
+	while (next.equals("?") && System.nanoTime() < deadline) {
+		if (log.contains("ALLOCATED " + pids[0] + "@1")) next = "A";
+		else if (log.contains("ALLOCATED " + pids[1] + "@1")) next = "W";
+		else Thread.sleep(1);
+	}
+	String result = next + " " + (os.steals() - steals);
+
+	log.clear();
+	steals = os.steals();
+	go[5 - onOne].release();
+	awaitLogged(log, "ALLOCATED " + pids[next.equals("A") ? 1 : 0] + "@0");
+	result += " " + (os.steals() - steals);
+	for (int i = 0; i < 2; i++) go[i].release();
+	for (Thread thread : threads) thread.join(test_timeout);
+	return result;
+}
+
+// Polls a synchronized event log until it holds the entry or the test timeout passes
+private void awaitLogged(java.util.List<String> log, String entry) throws InterruptedException {
+	long deadline = System.nanoTime() + test_timeout * 1_000_000L;
+	while (!log.contains(entry) && System.nanoTime() < deadline) Thread.sleep(1);
+}
+
+public void concurrent_interrupt_example_test() {
+	System.out.println("\n\n\n***** INTERRUPTED WAITER *****");
+	String test_status = "INTERRUPT PASSED";
+	try {
+		ConcurrentOS os = new ConcurrentOS();
+		os.set_number_of_processors(1);
+		java.util.List<String> log = java.util.Collections.synchronizedList(new ArrayList<String>());
+		os.setEventSink((event, pid, priority, processor) -> log.add(event + " " + pid));
+		int holder = os.reg(1);
+		os.start(holder);
+		int waiter = os.reg(1);
+		boolean[] stillInterrupted = new boolean[1];
+		Thread thread = new Thread(() -> {
+			os.start(waiter);
+			stillInterrupted[0] = Thread.currentThread().isInterrupted();
+		});
+		thread.start();
+		awaitLogged(log, "ENQUEUED " + waiter);
+		// The interrupted start() returns without a processor and leaves the queue
+		thread.interrupt();
+		thread.join(test_timeout);
+		os.terminate(holder);
+		// So the processor the holder freed is not granted to nobody
+		int next = os.reg(1);
+		Thread nextThread = new Thread(() -> os.start(next));
+		nextThread.setDaemon(true);
+		nextThread.start();
+		nextThread.join(test_timeout);
+		System.out.println("Interrupted waiter returned " + !thread.isAlive() + ", flag kept " + stillInterrupted[0]
+				+ ", dequeued " + log.contains("DEQUEUED " + waiter) + ", allocated " + log.contains("ALLOCATED " + waiter)
+				+ "; next process ran " + !nextThread.isAlive());
+		if (thread.isAlive() || !stillInterrupted[0] || !log.contains("DEQUEUED " + waiter)) test_status = "INTERRUPT FAILED";
+		if (log.contains("ALLOCATED " + waiter) || nextThread.isAlive()) test_status = "INTERRUPT FAILED";
+		os.terminate(waiter);
+		os.terminate(next);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "INTERRUPT FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void terminate_waiting_example_test() {
+	System.out.println("\n\n\n***** TERMINATING A WAITING PROCESS *****");
+	String test_status = "TERMINATE WAITING PASSED";
+	try {
+		OS os = new OS();
+		os.set_number_of_processors(1);
+		java.util.List<String> log = java.util.Collections.synchronizedList(new ArrayList<String>());
+		os.setEventSink((event, pid, priority, processor) -> log.add(event + " " + pid));
+		int holder = os.reg(1);
+		os.start(holder);
+		int[] waiters = { os.reg(1), os.reg(1) };
+		Throwable[] thrown = new Throwable[2];
+		Thread[] threads = new Thread[2];
+		for (int i = 0; i < 2; i++) {
+			int pid = waiters[i];
+			int index = i;
+			threads[i] = new Thread(() -> {
+				try {
+					if (index == 0) os.start(pid);
+					else os.startUnlessWithdrawn(pid);
+				} catch (Throwable e) {
+					thrown[index] = e;
+				}
+			});
+			threads[i].setDaemon(true);
+			threads[i].start();
+			awaitLogged(log, "ENQUEUED " + pid);
+		}
+		// Terminating a queued process wakes its thread, which returns cleanly
+		// even once the slot has gone to a new process
+		os.terminate(waiters[0]);
+		int reused = os.reg(1);
+		os.terminate(waiters[1]);
+		for (Thread thread : threads) thread.join(test_timeout);
+		boolean returned = !threads[0].isAlive() && !threads[1].isAlive();
+		os.terminate(holder);
+		System.out.println("Waiting threads returned " + returned + ", threw " + java.util.Arrays.toString(thrown)
+				+ ", slot reused " + (ProcessTable.slotOf(reused) == ProcessTable.slotOf(waiters[0])));
+		if (!returned || thrown[0] != null || thrown[1] != null) test_status = "TERMINATE WAITING FAILED";
+		if (log.contains("ALLOCATED " + waiters[0]) || log.contains("ALLOCATED " + waiters[1])) test_status = "TERMINATE WAITING FAILED";
+		os.terminate(reused);
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "TERMINATE WAITING FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
+
+public void resize_refused_example_test() {
+	System.out.println("\n\n\n***** RESIZING LOCK-FREE SCHEDULERS *****");
+	String test_status = "RESIZE PASSED";
+	try {
+		OS_sim_interface[] schedulers = { new ConcurrentOS(), new LocalQueueOS() };
+		for (OS_sim_interface os : schedulers) {
+			String name = os.getClass().getSimpleName();
+			os.set_number_of_processors(2);
+			int first = os.reg(1);
+			int second = os.reg(1);
+			os.start(first);
+			os.start(second);
+			// Processor 1 is held, so shrinking to one processor is refused
+			boolean refused = false;
+			try {
+				os.set_number_of_processors(1);
+			} catch (IllegalStateException e) {
+				refused = true;
+			}
+			os.terminate(first);
+			os.terminate(second);
+			os.set_number_of_processors(1);
+			int holder = os.reg(1);
+			int waiter = os.reg(1);
+			os.start(holder);
+			Thread thread = new Thread(() -> os.start(waiter));
+			thread.setDaemon(true);
+			thread.start();
+			thread.join(test_timeout / 10);
+			boolean waited = thread.isAlive();
+			os.terminate(holder);
+			thread.join(test_timeout);
+			System.out.println(name + ": resize refused " + refused + ", one processor after resize " + waited
+					+ ", waiter ran " + !thread.isAlive());
+			if (!refused || !waited || thread.isAlive()) test_status = "RESIZE FAILED";
+			os.terminate(waiter);
+		}
+	} catch (Exception e) {
+		e.printStackTrace();
+		test_status = "RESIZE FAILED";
+	}
+
+	System.out.println("\n" + test_status);
+}
 }
\ No newline at end of file
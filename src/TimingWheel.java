@@ -0,0 +1,201 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hashed timing wheel for time-slice timers. A timer is identified by a dense
+// int id (OS uses the process table slot) and lives in one of wheelSize
+// buckets, each an intrusive doubly linked list kept in int arrays, so arm()
+// and cancel() are O(1), allocate nothing once the arrays have grown, and
+// hundreds of thousands of armed timers cost a few ints each. One daemon
+// thread advances the wheel a tick at a time and visits only the bucket for
+// that tick; timers more than one revolution out count down their remaining
+// rounds there. While nothing is armed it parks until the next arm(). Expiry
+// just raises a per-id flag that expired() reads without locking, the way a
+// timer interrupt sets need-resched for the kernel to act on at the task's
+// next scheduling point.
+public class TimingWheel implements AutoCloseable {
+    private static final int NOT_ARMED = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long tickNanos;
+    private final int mask;
+    private final int shift;
+    private final int[] heads;
+    private final long origin = System.nanoTime();
+    private final Thread ticker;
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int[] buckets = filled(16);
+    private int[] rounds = new int[16];
+    private volatile AtomicIntegerArray expired = new AtomicIntegerArray(16);
+    // Next tick to process; ticks before it have fired
+    private long tick;
+    private int armed;
+    // Whether the ticker is parked with nothing armed; guarded by lock
+    private boolean idle;
+    private volatile boolean closed;
+
+    // wheelSize is rounded up to a power of two
+    public TimingWheel(long tickNanos, int wheelSize) {
+        if (tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickNanos = tickNanos;
+        this.shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, wheelSize - 1));
+        this.mask = (1 << shift) - 1;
+        heads = new int[1 << shift];
+        Arrays.fill(heads, NOT_ARMED);
+        ticker = new Thread(this::run, "timing-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    public int armedCount() {
+        lock.lock();
+        try {
+            return armed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // (Re)starts the timer; it expires once delayNanos have passed, rounded up
+    // to the end of a tick
+    public void arm(int id, long delayNanos) {
+        lock.lock();
+        try {
+            ensureCapacity(id);
+            unlink(id);
+            expired.set(id, 0);
+            long now = System.nanoTime() - origin;
+            if (armed == 0) {
+                // Nothing to expire in the ticks the idle ticker skipped
+                tick = Math.max(tick, now / tickNanos);
+            }
+            long target = Math.max(tick, (now + delayNanos) / tickNanos);
+            int bucket = (int) (target & mask);
+            rounds[id] = (int) Math.min(Integer.MAX_VALUE, (target - tick) >>> shift);
+            buckets[id] = bucket;
+            prev[id] = NOT_ARMED;
+            next[id] = heads[bucket];
+            if (heads[bucket] != NOT_ARMED) {
+                prev[heads[bucket]] = id;
+            }
+            heads[bucket] = id;
+            armed++;
+            if (idle) {
+                idle = false;
+                LockSupport.unpark(ticker);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the timer and clears its expiry flag
+    public void cancel(int id) {
+        lock.lock();
+        try {
+            if (id < buckets.length) {
+                unlink(id);
+                expired.set(id, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether the timer has fired since it was last armed or cancelled
+    public boolean expired(int id) {
+        AtomicIntegerArray flags = expired;
+        return id < flags.length() && flags.get(id) != 0;
+    }
+
+    private void unlink(int id) {
+        int bucket = buckets[id];
+        if (bucket == NOT_ARMED) {
+            return;
+        }
+        if (prev[id] != NOT_ARMED) {
+            next[prev[id]] = next[id];
+        } else {
+            heads[bucket] = next[id];
+        }
+        if (next[id] != NOT_ARMED) {
+            prev[next[id]] = prev[id];
+        }
+        buckets[id] = NOT_ARMED;
+        armed--;
+    }
+
+    private void run() {
+        while (!closed) {
+            long now = System.nanoTime() - origin;
+            boolean sleep;
+            lock.lock();
+            try {
+                while (armed > 0 && (tick + 1) * tickNanos <= now) {
+                    expire(tick++);
+                }
+                sleep = idle = armed == 0;
+            } finally {
+                lock.unlock();
+            }
+            // An arm() between the unlock and here leaves a permit, so park returns at once
+            if (sleep) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, (tick + 1) * tickNanos - now);
+            }
+        }
+    }
+
+    private void expire(long t) {
+        int bucket = (int) (t & mask);
+        for (int id = heads[bucket]; id != NOT_ARMED; ) {
+            int following = next[id];
+            if (rounds[id] == 0) {
+                unlink(id);
+                expired.set(id, 1);
+            } else {
+                rounds[id]--;
+            }
+            id = following;
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < buckets.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, buckets.length * 2);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        rounds = Arrays.copyOf(rounds, capacity);
+        int[] grown = filled(capacity);
+        System.arraycopy(buckets, 0, grown, 0, buckets.length);
+        buckets = grown;
+        AtomicIntegerArray flags = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < expired.length(); i++) {
+            flags.set(i, expired.get(i));
+        }
+        expired = flags;
+    }
+
+    private static int[] filled(int capacity) {
+        int[] array = new int[capacity];
+        Arrays.fill(array, NOT_ARMED);
+        return array;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Random access to a trace written by TraceRecorder, memory-mapped read-only
+// one region at a time. Records are addressed by index in publish order.
+public class TraceReader implements AutoCloseable {
+    private static final SchedulerEvent[] EVENTS = SchedulerEvent.values();
+    private static final long REGION_BYTES = (1L << 30) - (1L << 30) % TraceRecorder.RECORD_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+    private final long originNanos;
+    private final long createdMillis;
+
+    public TraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long bytes = channel.size();
+        if (bytes < TraceRecorder.HEADER_BYTES) {
+            channel.close();
+            throw new IOException("Not a scheduler trace: " + file);
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != TraceRecorder.MAGIC || header.getInt(4) != TraceRecorder.VERSION) {
+            channel.close();
+            throw new IOException("Not a version " + TraceRecorder.VERSION + " scheduler trace: " + file);
+        }
+        originNanos = header.getLong(16);
+        createdMillis = header.getLong(24);
+        long available = (bytes - TraceRecorder.HEADER_BYTES) / TraceRecorder.RECORD_BYTES;
+        regions = new MappedByteBuffer[(int) ((available * TraceRecorder.RECORD_BYTES + REGION_BYTES - 1) / REGION_BYTES)];
+        for (int i = 0; i < regions.length; i++) {
+            long offset = i * REGION_BYTES;
+            long length = Math.min(REGION_BYTES, available * TraceRecorder.RECORD_BYTES - offset);
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, TraceRecorder.HEADER_BYTES + offset, length);
+            regions[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        long count = header.getLong(8);
+        size = count > 0 ? Math.min(count, available) : unclosedSize(available);
+    }
+
+    // A recorder that was not closed leaves a zero-filled tail
+    private long unclosedSize(long available) {
+        long low = 0;
+        long high = available;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timestamp(mid) == 0 && word(mid) == 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // nanoTime when the recorder was created, to turn timestamps into offsets
+    public long originNanos() {
+        return originNanos;
+    }
+
+    public long createdMillis() {
+        return createdMillis;
+    }
+
+    public long timestamp(long index) {
+        return region(index).getLong(position(index));
+    }
+
+    public SchedulerEvent event(long index) {
+        return EVENTS[word(index) >>> 28];
+    }
+
+    public int pid(long index) {
+        return region(index).getInt(position(index) + 8);
+    }
+
+    public int priority(long index) {
+        return (word(index) >>> 16) & 0xFFF;
+    }
+
+    // Processor index, or -1 if the event has none
+    public int processor(long index) {
+        return (word(index) & 0xFFFF) - 1;
+    }
+
+    private int word(long index) {
+        return region(index).getInt(position(index) + 12);
+    }
+
+    private MappedByteBuffer region(long index) {
+        return regions[(int) (index * TraceRecorder.RECORD_BYTES / REGION_BYTES)];
+    }
+
+    private int position(long index) {
+        return (int) (index * TraceRecorder.RECORD_BYTES % REGION_BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Re-drives an OS_sim_interface implementation from a recorded trace and
+// reports where its decisions diverge from the recording and how long it took.
+//
+// The calls are reconstructed from the events: REGISTERED is reg(), a process's
+// first ENQUEUED or ALLOCATED is start(), FREED followed by ENQUEUED while it
+// runs is a yielding schedule() (one that kept the processor left no trace and
+// is not replayed) and TERMINATED is terminate(). Every process gets its own
+// thread, which issues its calls at the recorded offsets scaled by `speed`.
+// When speed is 0 the calls run back to back in recorded order instead: each
+// waits until the one recorded before it has returned or left its process
+// queued, so a replay on one processor decides the same way every time. If a
+// diverging replay stalls that order, say because the next call belongs to a
+// process still waiting for a processor, it is given up after a second. The
+// processor count is the highest processor index seen plus one. Divergence
+// compares the order in which processes were allocated a processor. Processes
+// whose trace ends before terminate() are terminated after their last call so
+// the replay cannot hang.
+//
+// Usage: java TraceReplay <trace> [implementation=OS] [speed=1]
+public class TraceReplay {
+    private static final byte START = 0;
+    private static final byte SCHEDULE = 1;
+    private static final byte TERMINATE = 2;
+
+    public static final class Report {
+        public final int processes;
+        public final long operations;
+        public final long originalNanos;
+        public final long replayNanos;
+        public final int originalAllocations;
+        public final int replayedAllocations;
+        // Index into the allocation order of the first mismatch, or -1
+        public final int firstDivergence;
+        public final int divergentAllocations;
+        public final int implicitTerminations;
+
+        Report(int processes, long operations, long originalNanos, long replayNanos, int originalAllocations,
+                int replayedAllocations, int firstDivergence, int divergentAllocations, int implicitTerminations) {
+            this.processes = processes;
+            this.operations = operations;
+            this.originalNanos = originalNanos;
+            this.replayNanos = replayNanos;
+            this.originalAllocations = originalAllocations;
+            this.replayedAllocations = replayedAllocations;
+            this.firstDivergence = firstDivergence;
+            this.divergentAllocations = divergentAllocations;
+            this.implicitTerminations = implicitTerminations;
+        }
+
+        @Override
+        public String toString() {
+            return "processes=" + processes + " operations=" + operations + " originalNanos=" + originalNanos
+                    + " replayNanos=" + replayNanos + " originalAllocations=" + originalAllocations
+                    + " replayedAllocations=" + replayedAllocations + " firstDivergence=" + firstDivergence
+                    + " divergentAllocations=" + divergentAllocations + " implicitTerminations=" + implicitTerminations;
+        }
+    }
+
+    // Calls of one recorded process, in order
+    private static final class Script {
+        final int pid;
+        final int priority;
+        long[] times = new long[4];
+        byte[] calls = new byte[4];
+        // Index of each call in the recorded order of all calls
+        int[] positions = new int[4];
+        int length;
+        boolean started;
+        boolean running;
+        volatile Thread thread;
+        // Position of the call in progress, or -1
+        volatile int inCall = -1;
+        // Position of the call that last left this process queued
+        volatile int queuedIn = -1;
+
+        Script(int pid, int priority) {
+            this.pid = pid;
+            this.priority = priority;
+        }
+
+        void add(byte call, long time, long position) {
+            if (length == calls.length) {
+                times = Arrays.copyOf(times, length * 2);
+                calls = Arrays.copyOf(calls, length * 2);
+                positions = Arrays.copyOf(positions, length * 2);
+            }
+            times[length] = time;
+            positions[length] = (int) position;
+            calls[length++] = call;
+        }
+    }
+
+    // The recorded order of calls for a replay at speed 0
+    private static final class Turns {
+        private static final long STALL_NANOS = 1_000_000_000L;
+        private static final long POLL_NANOS = 20_000;
+
+        private final Script[] owners;
+        private final AtomicLong turn = new AtomicLong();
+        private volatile boolean abandoned;
+
+        Turns(Script[] scripts, int processes, long operations) {
+            owners = new Script[(int) operations];
+            for (int i = 0; i < processes; i++) {
+                for (int call = 0; call < scripts[i].length; call++) {
+                    owners[scripts[i].positions[call]] = scripts[i];
+                }
+            }
+        }
+
+        // Waits until every call before `position` has had its turn; with
+        // position equal to the call count, until all of them have
+        void await(int position) {
+            long seen = turn.get();
+            long deadline = System.nanoTime() + STALL_NANOS;
+            while (seen < position && !abandoned) {
+                boolean next = seen == position - 1;
+                LockSupport.parkNanos(this, next ? POLL_NANOS : deadline - System.nanoTime());
+                if (next) {
+                    passIfBlocked((int) seen);
+                }
+                long now = turn.get();
+                if (now != seen) {
+                    seen = now;
+                    deadline = System.nanoTime() + STALL_NANOS;
+                } else if (System.nanoTime() - deadline >= 0) {
+                    abandoned = true;
+                    wakeAll();
+                }
+            }
+        }
+
+        // A call that queued its process has had its turn once its thread
+        // blocks; going by the event alone would let the next call overtake
+        // what the implementation does between queueing and blocking
+        private void passIfBlocked(int position) {
+            Script owner = owners[position];
+            Thread thread = owner.thread;
+            if (owner.queuedIn == position && owner.inCall == position && thread != null
+                    && thread.getState() == Thread.State.WAITING) {
+                advance(position);
+            }
+        }
+
+        // Passes the turn on from `position` unless that was already done
+        void advance(int position) {
+            if (!turn.compareAndSet(position, position + 1)) {
+                return;
+            }
+            // The next call may go now, and the owner of the one after it
+            // watches whether it blocks; past the last call, the implicit
+            // terminations wait for the end
+            for (int next = position + 1; next <= position + 2; next++) {
+                if (next < owners.length) {
+                    Thread thread = owners[next].thread;
+                    if (thread != null) {
+                        LockSupport.unpark(thread);
+                    }
+                } else if (next == owners.length) {
+                    wakeAll();
+                }
+            }
+        }
+
+        private void wakeAll() {
+            for (Script owner : owners) {
+                Thread thread = owner.thread;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java TraceReplay <trace> [implementation=OS] [speed=1]");
+            System.exit(2);
+        }
+        String name = "OS";
+        double speed = 1;
+        for (int i = 1; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            String key = equals > 0 ? args[i].substring(0, equals).trim() : "";
+            String value = args[i].substring(equals + 1).trim();
+            switch (key) {
+                case "implementation" -> name = value;
+                case "speed" -> speed = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Expected implementation=<class> or speed=<factor>: " + args[i]);
+            }
+        }
+        String implementation = name;
+        OS_sim_interface os = (OS_sim_interface) Class.forName(implementation).getConstructor().newInstance();
+        Consumer<SchedulerEventSink> installSink = sink -> {
+            try {
+                os.getClass().getMethod("setEventSink", SchedulerEventSink.class).invoke(os, sink);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException(implementation + " has no setEventSink", e);
+            }
+        };
+        System.out.println(replay(Path.of(args[0]), os, installSink, speed, ProcessRuntime.defaultThreadFactory()));
+    }
+
+    // installSink must route the implementation's events to the given sink
+    // (e.g. os::setEventSink); it is called once before the first reg()
+    public static Report replay(Path trace, OS_sim_interface os, Consumer<SchedulerEventSink> installSink, double speed,
+            ThreadFactory threads) throws IOException, InterruptedException {
+        Map<Integer, Script> byPid = new HashMap<>();
+        Script[] scripts = new Script[16];
+        int processes = 0;
+        int[] allocations = new int[16];
+        int allocationCount = 0;
+        int processorCount = 1;
+        long operations = 0;
+        long first = 0;
+        long last = 0;
+        try (TraceReader reader = new TraceReader(trace)) {
+            long size = reader.size();
+            if (size > 0) {
+                first = reader.timestamp(0);
+                last = reader.timestamp(size - 1);
+            }
+            for (long i = 0; i < size; i++) {
+                int pid = reader.pid(i);
+                long time = reader.timestamp(i) - first;
+                SchedulerEvent event = reader.event(i);
+                if (event == SchedulerEvent.REGISTERED) {
+                    Script script = new Script(pid, reader.priority(i));
+                    byPid.put(pid, script);
+                    if (processes == scripts.length) {
+                        scripts = Arrays.copyOf(scripts, processes * 2);
+                    }
+                    scripts[processes++] = script;
+                    continue;
+                }
+                Script script = byPid.get(pid);
+                if (script == null) {
+                    // Registered before recording began
+                    continue;
+                }
+                switch (event) {
+                    case ENQUEUED -> {
+                        if (!script.started) {
+                            script.started = true;
+                            script.add(START, time, operations++);
+                        }
+                    }
+                    case ALLOCATED -> {
+                        if (!script.started) {
+                            script.started = true;
+                            script.add(START, time, operations++);
+                        }
+                        script.running = true;
+                        if (allocationCount == allocations.length) {
+                            allocations = Arrays.copyOf(allocations, allocationCount * 2);
+                        }
+                        allocations[allocationCount++] = pid;
+                        processorCount = Math.max(processorCount, reader.processor(i) + 1);
+                    }
+                    case FREED -> {
+                        if (script.running) {
+                            script.add(SCHEDULE, time, operations++);
+                        }
+                        script.running = false;
+                    }
+                    case TERMINATED -> {
+                        script.running = false;
+                        script.add(TERMINATE, time, operations++);
+                        byPid.remove(pid);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        Turns order = speed == 0 ? new Turns(scripts, processes, operations) : null;
+        int[] replayed = new int[allocationCount + 16];
+        AtomicInteger replayedCount = new AtomicInteger();
+        Map<Integer, Integer> originalPid = new HashMap<>();
+        Map<Integer, Script> replayedScripts = new ConcurrentHashMap<>();
+        installSink.accept((event, pid, priority, processor) -> {
+            if (event == SchedulerEvent.ALLOCATED) {
+                int index = replayedCount.getAndIncrement();
+                if (index < replayed.length) {
+                    replayed[index] = pid;
+                }
+            } else if (event == SchedulerEvent.ENQUEUED && order != null) {
+                Script script = replayedScripts.get(pid);
+                if (script != null) {
+                    script.queuedIn = script.inCall;
+                }
+            }
+        });
+        os.set_number_of_processors(processorCount);
+        int[] newPids = new int[processes];
+        for (int i = 0; i < processes; i++) {
+            newPids[i] = os.reg(scripts[i].priority);
+            originalPid.put(newPids[i], scripts[i].pid);
+            replayedScripts.put(newPids[i], scripts[i]);
+        }
+
+        AtomicInteger implicit = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(processes);
+        long replayStart = System.nanoTime();
+        for (int i = 0; i < processes; i++) {
+            Script script = scripts[i];
+            int pid = newPids[i];
+            Thread thread = threads.newThread(() -> {
+                try {
+                    run(os, script, pid, replayStart, speed, order, implicit);
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        done.await();
+        long replayNanos = System.nanoTime() - replayStart;
+
+        int replayedAllocations = Math.min(replayedCount.get(), replayed.length);
+        int firstDivergence = -1;
+        int divergent = Math.abs(allocationCount - replayedAllocations);
+        for (int i = 0; i < Math.min(allocationCount, replayedAllocations); i++) {
+            if (allocations[i] != originalPid.getOrDefault(replayed[i], -1)) {
+                divergent++;
+                if (firstDivergence == -1) {
+                    firstDivergence = i;
+                }
+            }
+        }
+        if (firstDivergence == -1 && allocationCount != replayedAllocations) {
+            firstDivergence = Math.min(allocationCount, replayedAllocations);
+        }
+        return new Report(processes, operations, last - first, replayNanos, allocationCount, replayedAllocations,
+                firstDivergence, divergent, implicit.get());
+    }
+
+    // `turns` is null unless the calls keep the recorded order
+    private static void run(OS_sim_interface os, Script script, int pid, long replayStart, double speed,
+            Turns turns, AtomicInteger implicit) {
+        if (script.length == 0) {
+            // Registered but never started
+            return;
+        }
+        script.thread = Thread.currentThread();
+        for (int i = 0; i < script.length; i++) {
+            int position = script.positions[i];
+            if (turns != null) {
+                turns.await(position);
+                script.inCall = position;
+            } else {
+                long due = replayStart + (long) (script.times[i] / speed);
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            try {
+                switch (script.calls[i]) {
+                    case START -> os.start(pid);
+                    case SCHEDULE -> os.schedule(pid);
+                    default -> os.terminate(pid);
+                }
+            } finally {
+                if (turns != null) {
+                    script.inCall = -1;
+                    turns.advance(position);
+                }
+            }
+        }
+        if (script.calls[script.length - 1] != TERMINATE) {
+            if (turns != null) {
+                turns.await(turns.owners.length);
+            }
+            implicit.incrementAndGet();
+            os.terminate(pid);
+        }
+    }
+}
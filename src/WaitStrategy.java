@@ -0,0 +1,9 @@
+// How a process waits in OS.awaitAssignment() for a processor to be granted
+public enum WaitStrategy {
+    // Park on the process's Condition straight away
+    BLOCKING,
+    // Spin outside the scheduler lock for a fixed budget, then park
+    SPINNING,
+    // Spin for a budget tuned from recently observed handoff latencies, then park
+    ADAPTIVE
+}
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+// Synthetic workload for LoadTest, given as key=value pairs on the command
+// line or in a properties file (spec=<file>; later pairs override it):
+//
+//   implementation  OS_sim_interface class with a no-arg constructor (OS)
+//   processors      processor count (4)
+//   processes       processes to run in total (10000)
+//   arrivalRate     target arrivals per second, 0 for back to back (2000)
+//   arrivals        poisson or fixed inter-arrival times (poisson)
+//   priorities      level:weight list, e.g. 0:1,5:3,9:6 (0:1)
+//   bursts          CPU bursts per process, with a schedule() between two (4)
+//   burstTime       duration of each burst, spent spinning (exp:100us)
+//   thinkTime       pause after each burst but the last (fixed:0)
+//   maxLive         processes alive at once before arrivals wait (10000)
+//   seed            random seed (1)
+//
+// Durations are fixed:<d>, exp:<mean> or uniform:<min>-<max>, with d in
+// ns, us, ms or s.
+public final class WorkloadSpec {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("implementation", "OS");
+        DEFAULTS.put("processors", "4");
+        DEFAULTS.put("processes", "10000");
+        DEFAULTS.put("arrivalRate", "2000");
+        DEFAULTS.put("arrivals", "poisson");
+        DEFAULTS.put("priorities", "0:1");
+        DEFAULTS.put("bursts", "4");
+        DEFAULTS.put("burstTime", "exp:100us");
+        DEFAULTS.put("thinkTime", "fixed:0");
+        DEFAULTS.put("maxLive", "10000");
+        DEFAULTS.put("seed", "1");
+    }
+
+    // A random duration in nanoseconds
+    public static final class Distribution {
+        private final String text;
+        private final char kind;
+        private final long a;
+        private final long b;
+
+        private Distribution(String text, char kind, long a, long b) {
+            this.text = text;
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        public static Distribution parse(String text) {
+            String[] parts = text.split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected fixed:<d>, exp:<mean> or uniform:<min>-<max>: " + text);
+            }
+            switch (parts[0]) {
+                case "fixed" -> {
+                    return new Distribution(text, 'f', nanos(parts[1]), 0);
+                }
+                case "exp" -> {
+                    return new Distribution(text, 'e', nanos(parts[1]), 0);
+                }
+                case "uniform" -> {
+                    String[] range = parts[1].split("-", 2);
+                    if (range.length != 2) {
+                        throw new IllegalArgumentException("Expected uniform:<min>-<max>: " + text);
+                    }
+                    long min = nanos(range[0]);
+                    long max = nanos(range[1]);
+                    if (max < min) {
+                        throw new IllegalArgumentException("Empty range: " + text);
+                    }
+                    return new Distribution(text, 'u', min, max);
+                }
+                default -> throw new IllegalArgumentException("Unknown distribution " + parts[0] + ": " + text);
+            }
+        }
+
+        public long sample(SplittableRandom random) {
+            return switch (kind) {
+                case 'e' -> (long) (-Math.log(1 - random.nextDouble()) * a);
+                case 'u' -> a == b ? a : random.nextLong(a, b + 1);
+                default -> a;
+            };
+        }
+
+        public double meanNanos() {
+            return kind == 'u' ? (a + b) / 2.0 : a;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        static long nanos(String text) {
+            String value = text.trim();
+            long unit = 1;
+            if (value.endsWith("ns")) {
+                value = value.substring(0, value.length() - 2);
+            } else if (value.endsWith("us")) {
+                value = value.substring(0, value.length() - 2);
+                unit = 1_000;
+            } else if (value.endsWith("ms")) {
+                value = value.substring(0, value.length() - 2);
+                unit = 1_000_000;
+            } else if (value.endsWith("s")) {
+                value = value.substring(0, value.length() - 1);
+                unit = 1_000_000_000;
+            }
+            long nanos = (long) (Double.parseDouble(value) * unit);
+            if (nanos < 0) {
+                throw new IllegalArgumentException("Negative duration: " + text);
+            }
+            return nanos;
+        }
+    }
+
+    public final String implementation;
+    public final int processors;
+    public final int processes;
+    public final double arrivalRate;
+    public final boolean poissonArrivals;
+    public final int bursts;
+    public final Distribution burstTime;
+    public final Distribution thinkTime;
+    public final int maxLive;
+    public final long seed;
+    private final int[] levels;
+    private final double[] cumulativeWeights;
+    private final Map<String, String> values;
+
+    private WorkloadSpec(Map<String, String> values) {
+        this.values = values;
+        implementation = values.get("implementation");
+        processors = positive("processors");
+        processes = positive("processes");
+        arrivalRate = Double.parseDouble(values.get("arrivalRate"));
+        if (arrivalRate < 0) {
+            throw new IllegalArgumentException("arrivalRate must not be negative");
+        }
+        String arrivals = values.get("arrivals");
+        if (!arrivals.equals("poisson") && !arrivals.equals("fixed")) {
+            throw new IllegalArgumentException("arrivals must be poisson or fixed: " + arrivals);
+        }
+        poissonArrivals = arrivals.equals("poisson");
+        bursts = positive("bursts");
+        burstTime = Distribution.parse(values.get("burstTime"));
+        thinkTime = Distribution.parse(values.get("thinkTime"));
+        maxLive = positive("maxLive");
+        seed = Long.parseLong(values.get("seed"));
+
+        String[] entries = values.get("priorities").split(",");
+        levels = new int[entries.length];
+        cumulativeWeights = new double[entries.length];
+        double total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] pair = entries[i].split(":");
+            levels[i] = Integer.parseInt(pair[0].trim());
+            double weight = pair.length > 1 ? Double.parseDouble(pair[1].trim()) : 1;
+            if (levels[i] < 0 || weight <= 0) {
+                throw new IllegalArgumentException("Bad priority weight: " + entries[i]);
+            }
+            total += weight;
+            cumulativeWeights[i] = total;
+        }
+        for (int i = 0; i < entries.length; i++) {
+            cumulativeWeights[i] /= total;
+        }
+    }
+
+    private int positive(String key) {
+        int value = Integer.parseInt(values.get(key));
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    public static WorkloadSpec defaults() {
+        return parse();
+    }
+
+    // key=value pairs; spec=<file> loads a properties file first
+    public static WorkloadSpec parse(String... args) {
+        Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            String key = arg.substring(0, equals).trim();
+            String value = arg.substring(equals + 1).trim();
+            if (key.equals("spec")) {
+                load(Path.of(value), values);
+            } else {
+                put(values, key, value);
+            }
+        }
+        return new WorkloadSpec(values);
+    }
+
+    private static void load(Path file, Map<String, String> values) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read workload spec " + file, e);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            put(values, key, properties.getProperty(key).trim());
+        }
+    }
+
+    private static void put(Map<String, String> values, String key, String value) {
+        if (!DEFAULTS.containsKey(key)) {
+            throw new IllegalArgumentException("Unknown workload key " + key + "; expected one of " + DEFAULTS.keySet());
+        }
+        values.put(key, value);
+    }
+
+    // Highest priority level the workload uses
+    public int maxPriority() {
+        return Arrays.stream(levels).max().getAsInt();
+    }
+
+    public int samplePriority(SplittableRandom random) {
+        double r = random.nextDouble();
+        for (int i = 0; i < levels.length - 1; i++) {
+            if (r < cumulativeWeights[i]) {
+                return levels[i];
+            }
+        }
+        return levels[levels.length - 1];
+    }
+
+    // Nanoseconds until the next arrival, 0 when arrivals are unthrottled
+    public long sampleInterarrival(SplittableRandom random) {
+        if (arrivalRate == 0) {
+            return 0;
+        }
+        double mean = 1e9 / arrivalRate;
+        return (long) (poissonArrivals ? -Math.log(1 - random.nextDouble()) * mean : mean);
+    }
+
+    // The effective settings, in key order
+    public Map<String, String> values() {
+        return new LinkedHashMap<>(values);
+    }
+}